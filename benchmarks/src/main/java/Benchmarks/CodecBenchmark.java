@@ -0,0 +1,82 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Util.JsonCodec;
+
+/**
+ * JSON encoding and decoding of Model.Message through JsonCodec, next to the per-request ObjectMapper the handlers
+ * used before it. Responses are written to a stream that discards the bytes, so only the encoding is measured. Run
+ * with -prof gc to compare the bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    private final Message message = new Message(42, 7, "benchmark message 42", 1669947792L);
+    private final byte[] messageJson = ("{\"posted_by\":7,\"message_text\":\"benchmark message 42\","
+            + "\"time_posted_epoch\":1669947792}").getBytes(StandardCharsets.UTF_8);
+    private final List<Message> page = new ArrayList<>();
+    private final OutputStream discard = OutputStream.nullOutputStream();
+
+    public CodecBenchmark() {
+        for (int i = 1; i <= DaoBenchmark.PAGE_SIZE; i++) {
+            page.add(new Message(i, i % 10 + 1, "benchmark message " + i, 1669947792L + i));
+        }
+    }
+
+    @Benchmark
+    public void writeMessage() throws IOException {
+        JsonCodec.writeMessage(discard, message);
+    }
+
+    /**
+     * How the message handlers wrote a message before JsonCodec: a new ObjectMapper, a String, then its bytes.
+     */
+    @Benchmark
+    public void writeMessagePerRequestMapper(Blackhole blackhole) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        discard.write(mapper.writeValueAsString(message).getBytes(StandardCharsets.UTF_8));
+        blackhole.consume(mapper);
+    }
+
+    @Benchmark
+    public void writePage() throws IOException {
+        JsonCodec.writeMessages(discard, page);
+    }
+
+    @Benchmark
+    public Message readMessage() throws IOException {
+        return JsonCodec.readMessage(messageJson);
+    }
+
+    /**
+     * How the message handlers read a message before JsonCodec: a new ObjectMapper reading the body as a String.
+     */
+    @Benchmark
+    public Message readMessagePerRequestMapper() throws IOException {
+        return new ObjectMapper().readValue(new String(messageJson, StandardCharsets.UTF_8), Message.class);
+    }
+}
@@ -0,0 +1,78 @@
+package Benchmarks;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+
+/**
+ * The DAO read paths against a SeededDatabase, each one through the connection pool and statement cache exactly as
+ * a request would use it. Every benchmark picks a random message or account per call. OneThread and FourThreads run
+ * the same benchmarks single-threaded and with four threads sharing the pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class DaoBenchmark {
+    static final int PAGE_SIZE = 100;
+
+    private final MessageDAO messageDAO = new MessageDAO();
+    private final AccountDAO accountDAO = new AccountDAO();
+    private final SplittableRandom random = new SplittableRandom();
+
+    @Benchmark
+    public Message getMessageById(SeededDatabase db) {
+        return messageDAO.getMessageById(random.nextInt(db.messages) + 1);
+    }
+
+    /**
+     * One page of GET /messages, which replaced reading every message with getAllMessages.
+     */
+    @Benchmark
+    public List<Message> getMessagesAfterId(SeededDatabase db) {
+        return messageDAO.getMessagesAfterId(random.nextInt(db.messages), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getMessagesFromAccountIdAfterId(SeededDatabase db) {
+        return messageDAO.getMessagesFromAccountIdAfterId(random.nextInt(db.accounts) + 1, 0, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Message> getLatestMessagesFromAccountIdBefore(SeededDatabase db) {
+        long before = SeededDatabase.FIRST_EPOCH + random.nextInt(db.messages);
+        return messageDAO.getLatestMessagesFromAccountIdBefore(random.nextInt(db.accounts) + 1, before,
+                Integer.MAX_VALUE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Account login(SeededDatabase db) {
+        return accountDAO.login(new Account("user" + (random.nextInt(db.accounts) + 1), "password"));
+    }
+
+    @Threads(1)
+    public static class OneThread extends DaoBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends DaoBenchmark {
+    }
+}
@@ -0,0 +1,107 @@
+package Benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Message;
+import Model.MessagePage;
+import Service.AccountService;
+import Service.MessageService;
+import Util.ConnectionUtil;
+
+/**
+ * The first page of a full-text search against a SeededDatabase, answered by MessageService.searchMessages from its
+ * inverted index and, for comparison, by the LIKE '%term%' scan a search in MessageDAO would have to run, newest
+ * first in both cases. A seeded message reads "benchmark message n", so a common search for "message" matches every
+ * message, while a rare search for a number from the upper half of the ids matches about one. The LIKE scan stops
+ * early on a common term but reads the whole table for a rare one; run with -p messages=1000000 to see that at scale.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    static final int PAGE_SIZE = 100;
+    static final String LIKE_SQL = "SELECT * FROM message WHERE message_text LIKE ? ORDER BY message_id DESC LIMIT ?";
+
+    private final SplittableRandom random = new SplittableRandom();
+
+    /**
+     * One MessageService, whose index of every seeded message is built before the benchmarks run.
+     */
+    @State(Scope.Benchmark)
+    public static class Services {
+        MessageService messageService;
+
+        @Setup(Level.Trial)
+        public void create(SeededDatabase db) throws InterruptedException {
+            messageService = new MessageService(new AccountService());
+            messageService.awaitSearchIndex();
+        }
+    }
+
+    @Benchmark
+    public MessagePage searchIndexCommonTerm(Services services) {
+        return services.messageService.searchMessages("message", null, Integer.toString(PAGE_SIZE));
+    }
+
+    @Benchmark
+    public MessagePage searchIndexRareTerm(SeededDatabase db, Services services) {
+        return services.messageService.searchMessages(rareTerm(db), null, Integer.toString(PAGE_SIZE));
+    }
+
+    /**
+     * Takes the SeededDatabase only so that it is seeded before the scan.
+     */
+    @Benchmark
+    public List<Message> likeScanCommonTerm(SeededDatabase db) throws SQLException {
+        return likeScan("message");
+    }
+
+    @Benchmark
+    public List<Message> likeScanRareTerm(SeededDatabase db) throws SQLException {
+        return likeScan(rareTerm(db));
+    }
+
+    private String rareTerm(SeededDatabase db) {
+        return Integer.toString(db.messages / 2 + random.nextInt(db.messages - db.messages / 2) + 1);
+    }
+
+    private static List<Message> likeScan(String term) throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(LIKE_SQL)) {
+            preparedStatement.setString(1, "%" + term + "%");
+            preparedStatement.setInt(2, PAGE_SIZE);
+            List<Message> messages = new ArrayList<>(PAGE_SIZE);
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while (rs.next()) {
+                    messages.add(new Message(rs.getInt("message_id"), rs.getInt("posted_by"),
+                            rs.getString("message_text"), rs.getLong("time_posted_epoch")));
+                }
+            }
+            return messages;
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package Benchmarks;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.h2.tools.RunScript;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import Util.ConnectionUtil;
+
+/**
+ * A database seeded with the given number of messages spread over the given number of accounts, created once per fork
+ * before any benchmark that depends on it. Account n is named usern with the password "password". Message times are
+ * not in message_id order, like real posts arriving out of order.
+ *
+ * Unless -Ddb.url is given, the database lives in memory, so the benchmarks measure the application and H2 rather
+ * than the disk.
+ */
+@State(Scope.Benchmark)
+public class SeededDatabase {
+    public static final long FIRST_EPOCH = 1669947792L;
+
+    @Param("100000")
+    public int messages;
+
+    @Param("1000")
+    public int accounts;
+
+    @Setup(Level.Trial)
+    public void seed() throws Exception {
+        // Must be set before ConnectionUtil is first used, since it reads db.url once
+        if (System.getProperty("db.url") == null) {
+            System.setProperty("db.url", "jdbc:h2:mem:benchmarks;DB_CLOSE_DELAY=-1");
+        }
+        Connection connection = ConnectionUtil.getConnection();
+        try (Reader schema = new InputStreamReader(SeededDatabase.class.getResourceAsStream("/SocialMedia.sql"),
+                StandardCharsets.UTF_8);
+             Statement statement = connection.createStatement()) {
+            RunScript.execute(connection, schema);
+            statement.execute("DELETE FROM message");
+            statement.execute("DELETE FROM account");
+            statement.execute("ALTER TABLE account ALTER COLUMN account_id RESTART WITH 1");
+            statement.execute("ALTER TABLE message ALTER COLUMN message_id RESTART WITH 1");
+            statement.execute("INSERT INTO account(username, password) SELECT 'user' || X, 'password' "
+                    + "FROM SYSTEM_RANGE(1, " + accounts + ")");
+            statement.execute("INSERT INTO message(posted_by, message_text, time_posted_epoch) "
+                    + "SELECT MOD(X, " + accounts + ") + 1, 'benchmark message ' || X, "
+                    + FIRST_EPOCH + " + MOD(X * 7919, " + messages + ") FROM SYSTEM_RANGE(1, " + messages + ")");
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package Benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Account;
+import Model.Message;
+import Model.MessagePage;
+import Service.AccountService;
+import Service.MessageService;
+
+/**
+ * The service methods behind the read endpoints against a SeededDatabase, with their parameters passed as the
+ * query strings a request would carry. getMessage goes through the message cache and loginToAccount through the
+ * in-memory account index, so these show what the service layer saves over the DAO calls in DaoBenchmark. OneThread
+ * and FourThreads run the same benchmarks single-threaded and with four threads sharing the services.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class ServiceBenchmark {
+    static final String PAGE_SIZE = "100";
+
+    private final SplittableRandom random = new SplittableRandom();
+
+    /**
+     * One pair of services shared by every benchmark thread, like the one pair held by the controller.
+     */
+    @State(Scope.Benchmark)
+    public static class Services {
+        AccountService accountService;
+        MessageService messageService;
+
+        @Setup(Level.Trial)
+        public void create(SeededDatabase db) {
+            accountService = new AccountService();
+            messageService = new MessageService(accountService);
+        }
+    }
+
+    @Benchmark
+    public Message getMessage(SeededDatabase db, Services services) {
+        return services.messageService.getMessage(Integer.toString(random.nextInt(db.messages) + 1));
+    }
+
+    @Benchmark
+    public MessagePage retrieveMessages(SeededDatabase db, Services services) {
+        return services.messageService.retrieveMessages(Integer.toString(random.nextInt(db.messages)), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public MessagePage getMessagesFromAccount(SeededDatabase db, Services services) {
+        return services.messageService.getMessagesFromAccount(Integer.toString(random.nextInt(db.accounts) + 1),
+                null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public MessagePage getLatestMessagesFromAccount(SeededDatabase db, Services services) {
+        return services.messageService.getLatestMessagesFromAccount(
+                Integer.toString(random.nextInt(db.accounts) + 1), null, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Account loginToAccount(SeededDatabase db, Services services) {
+        return services.accountService.loginToAccount(
+                new Account("user" + (random.nextInt(db.accounts) + 1), "password"));
+    }
+
+    @Threads(1)
+    public static class OneThread extends ServiceBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends ServiceBenchmark {
+    }
+}
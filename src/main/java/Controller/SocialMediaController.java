@@ -1,17 +1,49 @@
 package Controller;
 
-import java.util.ArrayList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLTransientException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import Model.Account;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessagePage;
+import DAO.Storage;
+import DAO.StorageEngine;
 import Service.AccountService;
 import Service.MessageService;
+import Util.AdmissionLimiter;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import Util.InvertedIndex;
+import Util.JsonCodec;
+import Util.LruCache;
+import Util.Metrics;
+import Util.QueryStats;
+import Util.RecentMessagesCache;
+import Util.ResponseCache;
+import Util.RouteMetrics;
+import Util.UncheckedSQLException;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.HandlerType;
+import io.javalin.http.Header;
+import io.javalin.http.HttpResponseException;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -19,45 +51,276 @@ import io.javalin.http.Context;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    /**
+     * Response header carrying the after_id of the next page of a listing.
+     */
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    /**
+     * Response header carrying the before of the next page of a newest first listing.
+     */
+    static final String NEXT_BEFORE_HEADER = "X-Next-Before";
+    /**
+     * Values of the sort query parameter of GET /accounts/{account_id}/messages.
+     */
+    static final String SORT_ID = "id";
+    static final String SORT_LATEST = "latest";
+
     AccountService accountService;
     MessageService messageService;
-
-    public SocialMediaController() {
-        this.accountService = new AccountService();
-        this.messageService = new MessageService();
-    }
+    /**
+     * Per-route request metrics, plus the connection pool, query timing and message cache counters, served at GET
+     * /metrics.
+     */
+    Metrics metrics;
+    /**
+     * Encoded, and gzipped, bodies of the GET /messages and GET /accounts/{account_id}/messages pages, stamped with
+     * the version tag they were built at.
+     */
+    ResponseCache responseCache;
+    /**
+     * Admission limits for reads (GET) and writes (everything else), so that requests over the limit are answered
+     * with 503 at once instead of queuing on server threads behind a saturated connection pool.
+     */
+    AdmissionLimiter readAdmission;
+    AdmissionLimiter writeAdmission;
+    /**
+     * Seconds a client is told to wait, in Retry-After, before retrying a request that was not admitted.
+     */
+    String retryAfterSeconds;
 
     /**
      * In order for the test cases to work, you will need to write the endpoints in the startAPI() method, as the test
-     * suite must receive a Javalin object from this method.
+     * suite must receive a Javalin object from this method. Messages and accounts are kept in the storage engine named
+     * by the storage.engine system property, H2 by default.
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
-        app.post("/register", this::postAccountCreationHandler);
-        app.post("/login", this::postAccountLoginHandler);
-        app.post("/messages", this::postMessageCreationHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/messages/{message_id}", this::getMessageByIdHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageByIdHandler);
-        app.patch("/messages/{message_id}", this::updateMessageByIdHandler);
-        app.get("/accounts/{account_id}/messages", this::getAllMessagesFromAccountHandler);
+        return startAPI(StorageEngine.fromName(System.getProperty("storage.engine", "h2")));
+    }
+
+    /**
+     * Build the app on the given storage engine. The services, and the metrics that read them, are created here
+     * rather than in the constructor so that the engine can be chosen per app.
+     * @param storageEngine where messages and accounts are kept
+     * @return a Javalin app object which defines the behavior of the Javalin controller.
+     */
+    public Javalin startAPI(StorageEngine storageEngine) {
+        Storage storage = storageEngine.open();
+        this.accountService = new AccountService(storage.getAccountStore());
+        this.messageService = new MessageService(accountService, storage.getMessageStore());
+        this.responseCache = new ResponseCache(Long.getLong("responses.cache.maxBytes", 64L << 20),
+                Boolean.parseBoolean(System.getProperty("responses.cache.gzip", "true")));
+        long admissionMaxWaitMillis = Long.getLong("admission.maxWaitMillis", 50);
+        this.readAdmission = new AdmissionLimiter(Integer.getInteger("admission.reads.maxInFlight", 64),
+                Integer.getInteger("admission.reads.maxQueued", 64), admissionMaxWaitMillis);
+        this.writeAdmission = new AdmissionLimiter(Integer.getInteger("admission.writes.maxInFlight", 16),
+                Integer.getInteger("admission.writes.maxQueued", 16), admissionMaxWaitMillis);
+        this.retryAfterSeconds = Integer.toString(Integer.getInteger("admission.retryAfterSeconds", 1));
+        this.metrics = new Metrics();
+        registerMetrics();
+
+        Javalin app = Javalin.create(config -> config.jetty.server(() -> new Server(createThreadPool())));
+        addRoute(app, HandlerType.POST, "/register", this::postAccountCreationHandler);
+        addRoute(app, HandlerType.POST, "/login", this::postAccountLoginHandler);
+        addRoute(app, HandlerType.POST, "/messages", this::postMessageCreationHandler);
+        addRoute(app, HandlerType.POST, "/messages/batch", this::postMessageBatchCreationHandler);
+        addRoute(app, HandlerType.GET, "/messages", this::getAllMessagesHandler);
+        addRoute(app, HandlerType.GET, "/messages/search", this::searchMessagesHandler);
+        addRoute(app, HandlerType.GET, "/messages/{message_id}", this::getMessageByIdHandler);
+        addRoute(app, HandlerType.DELETE, "/messages/{message_id}", this::deleteMessageByIdHandler);
+        addRoute(app, HandlerType.PATCH, "/messages/{message_id}", this::updateMessageByIdHandler);
+        addRoute(app, HandlerType.GET, "/accounts/{account_id}/messages", this::getAllMessagesFromAccountHandler);
+        app.get("/metrics", this::getMetricsHandler);
+        app.events(event -> event.serverStopped(messageService::close));
 
         return app;
     }
 
+    /**
+     * Register a handler with its request count, status code and latency recorded in the route's RouteMetrics. The
+     * RouteMetrics is looked up here, once, so recording a request costs a clock read and a few atomic increments.
+     * A handler that throws is recorded with the status its exception maps to: the HttpResponseException's status, or
+     * 500 for anything else.
+     *
+     * A request must first be admitted by the limiter for its class, reads for GET and writes for everything else.
+     * One that is not admitted, because too many are already running and waiting, is answered with 503 and a
+     * Retry-After header without running the handler, and recorded with that status. So is a request whose handler
+     * failed on a transient database error, such as timing out waiting for a connection or for room in the group
+     * commit queue.
+     */
+    private void addRoute(Javalin app, HandlerType method, String path, Handler handler) {
+        RouteMetrics routeMetrics = metrics.route(method + " " + path);
+        AdmissionLimiter admission = method == HandlerType.GET ? readAdmission : writeAdmission;
+        app.addHandler(method, path, ctx -> {
+            long start = System.nanoTime();
+            if (!admission.acquire()) {
+                ctx.header(Header.RETRY_AFTER, retryAfterSeconds);
+                ctx.status(503);
+                routeMetrics.record(503, System.nanoTime() - start);
+                return;
+            }
+            try {
+                handler.handle(ctx);
+            } catch (HttpResponseException e) {
+                routeMetrics.record(e.getStatus(), System.nanoTime() - start);
+                throw e;
+            } catch (UncheckedSQLException e) {
+                if (!(e.getCause() instanceof SQLTransientException) || ctx.res().isCommitted()) {
+                    routeMetrics.record(500, System.nanoTime() - start);
+                    throw e;
+                }
+                ctx.res().resetBuffer();
+                ctx.header(Header.RETRY_AFTER, retryAfterSeconds);
+                ctx.status(503);
+                routeMetrics.record(503, System.nanoTime() - start);
+                return;
+            } catch (Exception e) {
+                routeMetrics.record(500, System.nanoTime() - start);
+                throw e;
+            } finally {
+                admission.release();
+            }
+            routeMetrics.record(ctx.statusCode(), System.nanoTime() - start);
+        });
+    }
+
+    /**
+     * Expose the connection pool, query timing, message cache, recent messages cache and response cache counters and
+     * the search index size, read only when the metrics are scraped.
+     */
+    private void registerMetrics() {
+        ConnectionPool pool = ConnectionUtil.getPool();
+        metrics.gauge("db_pool_connections", "Open pooled connections, by state.", "state=\"active\"",
+                pool::getActiveCount);
+        metrics.gauge("db_pool_connections", "Open pooled connections, by state.", "state=\"idle\"",
+                pool::getIdleCount);
+        metrics.gauge("db_pool_max_connections", "The most connections the pool opens.", "", pool::getMaxSize);
+        metrics.gauge("db_pool_waiting_threads", "Threads waiting for a connection.", "", pool::getWaitingCount);
+        metrics.counter("db_pool_borrows_total", "Connections handed out.", "", pool::getBorrowCount);
+        metrics.counter("db_pool_created_total", "Physical connections opened.", "", pool::getCreatedCount);
+        metrics.counter("db_pool_evicted_total", "Idle connections closed.", "", pool::getEvictedCount);
+        metrics.counter("db_pool_validation_failures_total", "Idle connections that failed validation.", "",
+                pool::getValidationFailureCount);
+        metrics.counter("db_pool_timeouts_total", "Borrows that timed out waiting for a connection.", "",
+                pool::getTimeoutCount);
+
+        QueryStats queryStats = ConnectionUtil.getQueryStats();
+        if (queryStats != null) {
+            metrics.histogram("db_connection_acquire_seconds", "Time spent borrowing a connection.", "",
+                    queryStats.getAcquire());
+            metrics.histograms("db_query_execute_seconds", "Time spent executing a statement, by SQL text.", "sql",
+                    queryStats::getTimings, QueryStats.Timings::getExecute);
+            metrics.histograms("db_query_iterate_seconds",
+                    "Time from a query returning until its rows were read, row mapping included, by SQL text.", "sql",
+                    queryStats::getTimings, QueryStats.Timings::getIterate);
+            metrics.counters("db_query_fetch_seconds_total", "Time spent inside ResultSet.next(), by SQL text.", "sql",
+                    queryStats::getTimings, timings -> timings.getFetchNanos() / 1e9);
+            metrics.counters("db_query_rows_total", "Rows read, by SQL text.", "sql", queryStats::getTimings,
+                    QueryStats.Timings::getRows);
+            metrics.counters("db_query_errors_total", "Executions that failed, by SQL text.", "sql",
+                    queryStats::getTimings, QueryStats.Timings::getErrors);
+            metrics.counters("db_query_slow_total", "Executions over the slow query threshold, by SQL text.", "sql",
+                    queryStats::getTimings, QueryStats.Timings::getSlowCount);
+        }
+
+        LruCache<Integer, Message> messageCache = messageService.getMessageCache();
+        metrics.counter("message_cache_hits_total", "Message lookups answered from the cache.", "",
+                messageCache::getHitCount);
+        metrics.counter("message_cache_misses_total", "Message lookups that went to the database.", "",
+                messageCache::getMissCount);
+        metrics.counter("message_cache_evictions_total", "Messages evicted to keep the cache within its size.", "",
+                messageCache::getEvictionCount);
+        metrics.gauge("message_cache_size", "Messages currently cached.", "", messageCache::size);
+
+        RecentMessagesCache recentMessages = messageService.getRecentMessages();
+        metrics.counter("recent_messages_cache_hits_total", "Account listing pages answered from memory.", "",
+                recentMessages::getHitCount);
+        metrics.counter("recent_messages_cache_misses_total", "Account listing pages that went to the database.", "",
+                recentMessages::getMissCount);
+        metrics.counter("recent_messages_cache_evictions_total",
+                "Accounts evicted to keep the recent messages cache within its size.", "",
+                recentMessages::getEvictionCount);
+        metrics.gauge("recent_messages_cache_accounts", "Accounts whose newest messages are cached.", "",
+                recentMessages::size);
+
+        InvertedIndex searchIndex = messageService.getSearchIndex();
+        metrics.counter("response_cache_hits_total", "Listing pages written from the response cache.", "",
+                responseCache::getHitCount);
+        metrics.counter("response_cache_misses_total", "Listing pages that had to be built and encoded.", "",
+                responseCache::getMissCount);
+        metrics.counter("response_cache_evictions_total",
+                "Cached pages evicted to keep the response cache within its size.", "",
+                responseCache::getEvictionCount);
+        metrics.gauge("response_cache_bytes", "Bytes of encoded and gzipped pages cached.", "",
+                responseCache::getBytes);
+
+        metrics.gauge("search_index_terms", "Distinct terms in the message search index.", "",
+                searchIndex::getTermCount);
+        metrics.gauge("search_index_postings", "Message ids held across every term of the search index.", "",
+                searchIndex::getPostingCount);
+
+        registerAdmissionMetrics("read", readAdmission);
+        registerAdmissionMetrics("write", writeAdmission);
+    }
+
+    private void registerAdmissionMetrics(String requestClass, AdmissionLimiter admission) {
+        String label = "class=\"" + requestClass + "\"";
+        metrics.gauge("admission_in_flight", "Requests admitted and still running, by class.", label,
+                admission::getInFlightCount);
+        metrics.gauge("admission_max_in_flight", "The most requests admitted at once, by class.", label,
+                admission::getMaxInFlight);
+        metrics.gauge("admission_queued", "Requests waiting to be admitted, by class.", label,
+                admission::getQueuedCount);
+        metrics.counter("admission_admitted_total", "Requests admitted, by class.", label,
+                admission::getAdmittedCount);
+        metrics.counter("admission_rejected_total", "Requests answered with 503 without running, by class and reason.",
+                label + ",reason=\"queue_full\"", admission::getQueueFullCount);
+        metrics.counter("admission_rejected_total", "Requests answered with 503 without running, by class and reason.",
+                label + ",reason=\"timeout\"", admission::getTimeoutCount);
+    }
+
+    /**
+     * Build the thread pool Jetty runs requests on. By default handlers run on at most server.maxThreads (250) platform
+     * threads, so that many requests can be blocked in JDBC at once and the rest queue behind them. Started with
+     * -Dserver.virtualThreads=true on a JDK with virtual threads (21 or later), Jetty keeps its platform threads for
+     * accepting and selecting and runs every handler on a new virtual thread instead, so a request blocked in JDBC no
+     * longer holds a thread the next request needs. On an older JDK the switch is ignored with a warning.
+     */
+    private static QueuedThreadPool createThreadPool() {
+        QueuedThreadPool threadPool = new QueuedThreadPool(Integer.getInteger("server.maxThreads", 250), 8, 60_000);
+        threadPool.setName("JettyServerThreadPool");
+        if (Boolean.getBoolean("server.virtualThreads")) {
+            if (VirtualThreads.areSupported()) {
+                threadPool.setUseVirtualThreads(true);
+            } else {
+                System.out.println("server.virtualThreads needs a JDK with virtual threads, using platform threads");
+            }
+        }
+        return threadPool;
+    }
+
+    /**
+     * Handler to serve every metric in the Prometheus text format
+     * 
+     * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void getMetricsHandler(Context ctx) {
+        ctx.contentType(Metrics.CONTENT_TYPE);
+        ctx.result(metrics.scrape());
+    }
+
     /**
      * Handler to post a new author
      * 
      * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object
+     * @throws IOException will be thrown if there is an issue converting JSON into an object
      */
-    private void postAccountCreationHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
+    private void postAccountCreationHandler(Context ctx) throws IOException {
+        Account account = JsonCodec.readAccount(ctx.bodyAsBytes());
         Account addedAccount = accountService.addAccount(account);
         if (addedAccount != null) {
-            ctx.json(mapper.writeValueAsString(addedAccount));
+            ctx.contentType(ContentType.APPLICATION_JSON);
+            JsonCodec.writeAccount(ctx.outputStream(), addedAccount);
         } else {
             ctx.status(400);
         }
@@ -67,14 +330,14 @@ public class SocialMediaController {
      * Handler to login to account
      * 
      * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object
+     * @throws IOException will be thrown if there is an issue converting JSON into an object
      */
-    private void postAccountLoginHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
+    private void postAccountLoginHandler(Context ctx) throws IOException {
+        Account account = JsonCodec.readAccount(ctx.bodyAsBytes());
         Account loggedIntoAccount = accountService.loginToAccount(account);
         if (loggedIntoAccount != null) {
-            ctx.json(mapper.writeValueAsString(loggedIntoAccount));
+            ctx.contentType(ContentType.APPLICATION_JSON);
+            JsonCodec.writeAccount(ctx.outputStream(), loggedIntoAccount);
         } else {
             ctx.status(401);
         }
@@ -84,39 +347,102 @@ public class SocialMediaController {
      * Handler to post a new message
      * 
      * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object
+     * @throws IOException will be thrown if there is an issue converting JSON into an object
      */
-    private void postMessageCreationHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
+    private void postMessageCreationHandler(Context ctx) throws IOException {
+        Message message = JsonCodec.readMessage(ctx.bodyAsBytes());
         Message addedMessage = messageService.createMessage(message);
         if (addedMessage != null) {
-            ctx.json(mapper.writeValueAsString(addedMessage));
+            writeMessage(ctx, addedMessage);
+        } else {
+            ctx.status(400);
+        }
+    }
+
+    /**
+     * Handler to post a batch of new messages. The request body is a JSON array of messages, and the response body
+     * holds one result per message saying whether it was created and, if so, the created message.
+     * 
+     * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if the results can not be written to the client
+     */
+    private void postMessageBatchCreationHandler(Context ctx) throws IOException {
+        List<Message> messages;
+        try {
+            messages = JsonCodec.readMessages(ctx.bodyAsBytes());
+        } catch (JsonProcessingException e) {
+            ctx.status(400);
+            return;
+        }
+        List<MessageBatchResult> results = messageService.createMessages(messages);
+        if (results != null) {
+            ctx.contentType(ContentType.APPLICATION_JSON);
+            JsonCodec.writeBatchResults(ctx.outputStream(), results);
         } else {
             ctx.status(400);
         }
     }
 
     /**
-     * Handler to retrieve all messages
+     * Handler to retrieve all messages, one page at a time. The optional query parameters limit and after_id select
+     * the page, and the X-Next-Cursor header carries the after_id of the next page when there is one. With
+     * stream=true the listing is streamed instead, see streamMessages.
+     * 
+     * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if a streamed listing can not be written to the client
+     */
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        String tag = messageService.getGlobalTag();
+        if (isNotModified(ctx, tag, true)) return;
+        if (isStreamRequested(ctx)) {
+            streamMessages(ctx, null);
+            return;
+        }
+        String after_id = ctx.queryParam("after_id");
+        String limit = ctx.queryParam("limit");
+        String key = "/messages?after_id=" + after_id + "&limit=" + limit;
+        if (!writeCachedPage(ctx, key, tag, () -> messageService.retrieveMessages(after_id, limit))) {
+            ctx.status(400);
+        }
+    }
+
+    /**
+     * Handler to search the text of every message, newest first, one page at a time. The q query parameter holds the
+     * words every listed message must contain, limit and before_id select the page, and the X-Next-Cursor header
+     * carries the before_id of the next page when there is one. Until the search index is built, after a start,
+     * every search is answered with 503 and a Retry-After header.
      * 
      * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if the messages can not be written to the client
      */
-    private void getAllMessagesHandler(Context ctx) {
-        List<Message> messages = messageService.retrieveMessages();
-        ctx.json(messages);
+    private void searchMessagesHandler(Context ctx) throws IOException {
+        if (!messageService.isSearchIndexReady()) {
+            ctx.header(Header.RETRY_AFTER, retryAfterSeconds);
+            ctx.status(503);
+            return;
+        }
+        if (isNotModified(ctx, messageService.getGlobalTag(), true)) return;
+        MessagePage page = messageService.searchMessages(ctx.queryParam("q"), ctx.queryParam("before_id"),
+                ctx.queryParam("limit"));
+        if (page != null) {
+            writePage(ctx, page);
+        } else {
+            ctx.status(400);
+        }
     }
 
     /**
      * Handler to retrieve a message by message id
      * 
      * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if the message can not be written to the client
      */
-    private void getMessageByIdHandler(Context ctx) {
+    private void getMessageByIdHandler(Context ctx) throws IOException {
         String message_id = ctx.pathParam("message_id");
+        if (isNotModified(ctx, messageService.getMessageTag(message_id), false)) return;
         Message messageWithId = messageService.getMessage(message_id);
         if (messageWithId != null) {
-            ctx.json(messageWithId);
+            writeMessage(ctx, messageWithId);
         } else {
             ctx.json("");
         }
@@ -126,12 +452,13 @@ public class SocialMediaController {
      * Handler to delete a message with message id
      * 
      * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if the message can not be written to the client
      */
-    private void deleteMessageByIdHandler(Context ctx) {
+    private void deleteMessageByIdHandler(Context ctx) throws IOException {
         String message_id = ctx.pathParam("message_id");
         Message deletedMessage = messageService.deleteMessage(message_id);
         if (deletedMessage != null) {
-            ctx.json(deletedMessage);
+            writeMessage(ctx, deletedMessage);
         } else {
             ctx.json("");
         }
@@ -141,33 +468,225 @@ public class SocialMediaController {
      * Handler to update a message by message id
      * 
      * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object
+     * @throws IOException will be thrown if there is an issue converting JSON into an object
      */
-    private void updateMessageByIdHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void updateMessageByIdHandler(Context ctx) throws IOException {
         String message_id = ctx.pathParam("message_id");
-        Message message = mapper.readValue(ctx.body(), Message.class);
+        Message message = JsonCodec.readMessage(ctx.bodyAsBytes());
         Message updatedMessage = messageService.updateMessage(message_id, message.getMessage_text());
         if (updatedMessage != null) {
-            ctx.json(updatedMessage);
+            writeMessage(ctx, updatedMessage);
         } else {
             ctx.status(400);
         }
     }
 
     /**
-     * Handler to retrieve all messages with account id
+     * Handler to retrieve all messages with account id, one page at a time. Paged the same way as
+     * getAllMessagesHandler, and also supports stream=true. With sort=latest the messages are listed newest first
+     * instead: the optional before query parameter is an epoch time the messages must be posted before, and the next
+     * page is requested with the X-Next-Before and X-Next-Cursor headers as before and after_id.
      * 
      * @param ctx the The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException will be thrown if a streamed listing can not be written to the client
      */
-    private void getAllMessagesFromAccountHandler(Context ctx) {
+    private void getAllMessagesFromAccountHandler(Context ctx) throws IOException {
         String account_id = ctx.pathParam("account_id");
-        List<Message> messagesFromAccountId = messageService.getAllMessagesFromAccount(account_id);
-        if (messagesFromAccountId != null) {
-            ctx.json(messagesFromAccountId);
-        } else {
-            ctx.json("");
+        String tag = messageService.getAccountTag(account_id);
+        if (isNotModified(ctx, tag, true)) return;
+        String sort = ctx.queryParam("sort");
+        String after_id = ctx.queryParam("after_id");
+        String limit = ctx.queryParam("limit");
+        if (SORT_LATEST.equals(sort)) {
+            String before = ctx.queryParam("before");
+            String key = "/accounts/" + account_id + "/messages?sort=latest&before=" + before + "&after_id=" + after_id
+                    + "&limit=" + limit;
+            if (!writeCachedPage(ctx, key, tag,
+                    () -> messageService.getLatestMessagesFromAccount(account_id, before, after_id, limit))) {
+                ctx.status(400);
+            }
+            return;
+        }
+        if (sort != null && !SORT_ID.equals(sort)) {
+            ctx.status(400);
+            return;
+        }
+        if (isStreamRequested(ctx)) {
+            streamMessages(ctx, account_id);
+            return;
+        }
+        String key = "/accounts/" + account_id + "/messages?after_id=" + after_id + "&limit=" + limit;
+        if (!writeCachedPage(ctx, key, tag,
+                () -> messageService.getMessagesFromAccount(account_id, after_id, limit))) {
+            ctx.status(400);
+        }
+    }
+
+    /**
+     * Tag the response with the current version of what it returns and, when the client's If-None-Match already
+     * names that version, answer 304 Not Modified with no body. Called before the handler reads anything, so a
+     * request answered this way never reaches the DAO or the JSON encoder.
+     *
+     * A listing may go out gzipped or not, so its body is not the same bytes for every client, and it is tagged with
+     * a weak validator. If-None-Match compares weakly, so a tag matches in either form.
+     * 
+     * @param etag the current tag, null to leave the request unconditional
+     * @param weak whether to send the tag as a weak validator, for a response that may be compressed
+     * @return true if the response is a 304 and the handler has nothing left to do
+     */
+    private static boolean isNotModified(Context ctx, String etag, boolean weak) {
+        if (etag == null) return false;
+        ctx.header(Header.ETAG, weak ? "W/" + etag : etag);
+        String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // W/"x" and "x" match each other
+            if (candidate.startsWith("W/")) candidate = candidate.substring(2);
+            if (candidate.equals(etag) || candidate.equals("*")) {
+                ctx.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write a page of messages as a JSON list, with the next page's cursor in the X-Next-Cursor header (and for
+     * newest first listings the X-Next-Before header)
+     */
+    private void writePage(Context ctx, MessagePage page) throws IOException {
+        pageHeaders(page).forEach(ctx::header);
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        JsonCodec.writeMessages(ctx.outputStream(), page.getMessages());
+    }
+
+    /**
+     * @return the X-Next-Cursor and X-Next-Before headers of a page, those it has
+     */
+    private static Map<String, String> pageHeaders(MessagePage page) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        if (page.getNextCursor() != null) headers.put(NEXT_CURSOR_HEADER, page.getNextCursor().toString());
+        if (page.getNextBefore() != null) headers.put(NEXT_BEFORE_HEADER, page.getNextBefore().toString());
+        return headers;
+    }
+
+    /**
+     * Write a page of messages from the response cache, or build the page, cache its encoded body and write that.
+     * A cached page is written without calling the service, encoding JSON or compressing.
+     * 
+     * @param key the route and parameters the page is cached under
+     * @param tag the version tag of what the page shows, taken before the page is built
+     * @param page builds the page, returning null if the request is not valid
+     * @return false if the page was not valid, and nothing was written
+     */
+    private boolean writeCachedPage(Context ctx, String key, String tag, Supplier<MessagePage> page)
+            throws IOException {
+        ResponseCache.Response response = tag != null ? responseCache.get(key, tag) : null;
+        if (response == null) {
+            MessagePage messagePage = page.get();
+            if (messagePage == null) return false;
+            if (tag == null || !responseCache.isEnabled()) {
+                writePage(ctx, messagePage);
+                return true;
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            JsonCodec.writeMessages(body, messagePage.getMessages());
+            response = responseCache.put(key, tag, body.toByteArray(), pageHeaders(messagePage));
+        }
+        response.getHeaders().forEach(ctx::header);
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        if (response.getGzipped() == null) {
+            ctx.outputStream().write(response.getBody());
+            return true;
+        }
+        ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+        String acceptEncoding = ctx.header(Header.ACCEPT_ENCODING);
+        byte[] body = response.getBody();
+        if (acceptsGzip(acceptEncoding)) {
+            ctx.header(Header.CONTENT_ENCODING, "gzip");
+            body = response.getGzipped();
+        }
+        // Past Javalin's output stream, which would compress the body again
+        ctx.res().setContentLength(body.length);
+        ctx.res().getOutputStream().write(body);
+        return true;
+    }
+
+    /**
+     * Whether an Accept-Encoding header lets the response be gzipped: gzip, or failing that *, is listed with a
+     * quality above 0. So "gzip;q=0" and "gzip;q=0, *" both refuse it. A quality that is not a number counts as 0.
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        double gzipQuality = -1;
+        double anyQuality = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            if (!name.equals("gzip") && !name.equals("x-gzip") && !name.equals("*")) continue;
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.length() < 2 || Character.toLowerCase(parameter.charAt(0)) != 'q'
+                        || parameter.charAt(1) != '=') {
+                    continue;
+                }
+                try {
+                    quality = Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    quality = 0;
+                }
+            }
+            if (name.equals("*")) {
+                anyQuality = Math.max(anyQuality, quality);
+            } else {
+                gzipQuality = Math.max(gzipQuality, quality);
+            }
+        }
+        return gzipQuality >= 0 ? gzipQuality > 0 : anyQuality > 0;
+    }
+
+    /**
+     * Write a message as the JSON response body
+     */
+    private static void writeMessage(Context ctx, Message message) throws IOException {
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        JsonCodec.writeMessage(ctx.outputStream(), message);
+    }
+
+    private static boolean isStreamRequested(Context ctx) {
+        return "true".equals(ctx.queryParam("stream"));
+    }
+
+    /**
+     * Stream a listing straight from the DAO's ResultSet to the response. Each row is written through a JsonGenerator
+     * as soon as it is read, so memory use does not grow with the number of messages. limit and after_id are honoured
+     * but the limit is not capped, and no X-Next-Cursor header is sent.
+     *
+     * If the messages can not be read to the end, the array is never closed. A failure before anything was sent is
+     * rethrown and answered like any other; one after the status line went out aborts the connection, so the client
+     * sees a broken response rather than a short listing.
+     * 
+     * @param account_id the account whose messages are streamed, null for every message
+     */
+    private void streamMessages(Context ctx, String account_id) throws IOException {
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        JsonCodec.MessageArrayWriter writer = new JsonCodec.MessageArrayWriter(ctx.outputStream());
+        try {
+            boolean valid = messageService.streamMessages(account_id, ctx.queryParam("after_id"),
+                    ctx.queryParam("limit"), writer);
+            if (valid) {
+                writer.finish();
+            } else {
+                ctx.status(400);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (UncheckedSQLException e) {
+            if (!ctx.res().isCommitted()) throw e;
+            Request.getBaseRequest(ctx.req()).getHttpChannel().abort(e);
         }
     }
 
-}
\ No newline at end of file
+}
@@ -7,14 +7,18 @@ import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 // DAO is the class that mediates the transformation of data between the format objects to rows in a database.
-public class AccountDAO {
+// This one keeps accounts in the H2 account table.
+public class AccountDAO implements AccountStore {
     /**
      * insert new account into the account table
      * 
      * @return newly created account(id, username, password)
      */
+    @Override
     public Account insertAccount(Account account) {
         Connection connection = ConnectionUtil.getConnection();
         try {
@@ -37,6 +41,8 @@ public class AccountDAO {
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
 
         // If try fails, return null
@@ -49,6 +55,7 @@ public class AccountDAO {
     - The login will be successful if and only if the username and password provided in the request body JSON match a real account existing on the database. If successful, the response body should contain a JSON of the account in the response body, including its account_id. The response status should be 200 OK, which is the default.
     - If the login is not successful, the response status should be 401. (Unauthorized)
     */
+    @Override
     public Account login(Account account) {
         Connection connection = ConnectionUtil.getConnection();
         try {
@@ -73,9 +80,46 @@ public class AccountDAO {
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
 
         // If try fails, return null
         return null;
     }
+
+    /**
+     * get all accounts from the account table
+     * 
+     * @return all accounts
+     */
+    @Override
+    public List<Account> getAllAccounts() {
+        Connection connection = ConnectionUtil.getConnection();
+        List<Account> accounts = new ArrayList<>();
+        try {
+            // SQL Logic
+            String sql = "SELECT * FROM account;";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            // Execute preparedStatement and get the ResultSet
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                // Get all attributes
+                int account_id = resultSet.getInt("account_id");
+                String username = resultSet.getString("username");
+                String password = resultSet.getString("password");
+
+                // Create account object and add to list
+                accounts.add(new Account(account_id, username, password));
+            }
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+
+        // If try fails, return empty list
+        return accounts;
+    }
 }
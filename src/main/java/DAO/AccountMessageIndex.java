@@ -0,0 +1,141 @@
+package DAO;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import Util.IntObjectMap;
+import Util.SortedIntList;
+
+/**
+ * The message ids of every account, in ascending id order and by time_posted_epoch, kept in primitive arrays so an
+ * account's listing never touches a per-message object. Shared by the stores that keep messages in memory, which
+ * guard it with their own lock.
+ */
+final class AccountMessageIndex {
+    private final IntObjectMap<AccountMessages> byAccount = new IntObjectMap<>();
+
+    void add(int posted_by, long time_posted_epoch, int message_id) {
+        AccountMessages accountMessages = byAccount.get(posted_by);
+        if (accountMessages == null) {
+            accountMessages = new AccountMessages();
+            byAccount.put(posted_by, accountMessages);
+        }
+        accountMessages.ids.add(message_id);
+        accountMessages.byTime.add(time_posted_epoch, message_id);
+    }
+
+    void remove(int posted_by, long time_posted_epoch, int message_id) {
+        AccountMessages accountMessages = byAccount.get(posted_by);
+        if (accountMessages == null) return;
+        accountMessages.ids.remove(message_id);
+        accountMessages.byTime.remove(time_posted_epoch, message_id);
+        if (accountMessages.ids.size() == 0) byAccount.remove(posted_by);
+    }
+
+    /**
+     * @return the account's message ids in ascending order, null if it has no messages
+     */
+    SortedIntList ids(int posted_by) {
+        AccountMessages accountMessages = byAccount.get(posted_by);
+        return accountMessages == null ? null : accountMessages.ids;
+    }
+
+    /**
+     * Pass the ids of the account's latest messages posted before a point in time to consumer, newest first, ties in
+     * ascending message id order.
+     *
+     * @param before only messages posted at or before this epoch time are listed
+     * @param after_id of the messages posted exactly at before, only those with a greater message id are listed
+     * @param limit the most ids to list
+     */
+    void latest(int posted_by, long before, int after_id, int limit, IntConsumer consumer) {
+        AccountMessages accountMessages = byAccount.get(posted_by);
+        if (accountMessages == null) return;
+        TimeIndex byTime = accountMessages.byTime;
+        // Everything before this index is listable; walk back from it to list newest first
+        int end = byTime.countListable(before, after_id);
+        int start = Math.max(0, end - limit);
+        for (int i = end - 1; i >= start; i--) consumer.accept(byTime.ids[i]);
+    }
+
+    /**
+     * The messages of one account, by id and by time.
+     */
+    private static final class AccountMessages {
+        final SortedIntList ids = new SortedIntList();
+        final TimeIndex byTime = new TimeIndex();
+    }
+
+    /**
+     * Message times and ids in parallel arrays, sorted by time_posted_epoch ascending and then message id descending.
+     * Read backwards that is the newest-first order of getLatestMessagesFromAccountIdBefore, and the messages a page
+     * may list always form a prefix, so a page is one binary search and a walk. Messages usually arrive in time order,
+     * which makes adding one an append.
+     */
+    private static final class TimeIndex {
+        long[] times = new long[8];
+        int[] ids = new int[8];
+        int size;
+
+        void add(long time, int id) {
+            int index = size;
+            if (size > 0 && !isBefore(times[size - 1], ids[size - 1], time, id)) index = indexOf(time, id);
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(times, index, times, index + 1, size - index);
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            times[index] = time;
+            ids[index] = id;
+            size++;
+        }
+
+        void remove(long time, int id) {
+            int index = indexOf(time, id);
+            if (index == size || times[index] != time || ids[index] != id) return;
+            System.arraycopy(times, index + 1, times, index, size - index - 1);
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+
+        /**
+         * @return how many entries were posted before the time, or at it with a greater message id than after_id
+         */
+        int countListable(long before, int after_id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                long time = times[middle];
+                if (time < before || time == before && ids[middle] > after_id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return the index of the first entry not sorted before (time, id)
+         */
+        private int indexOf(long time, int id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (isBefore(times[middle], ids[middle], time, id)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private static boolean isBefore(long time, int id, long otherTime, int otherId) {
+            return time < otherTime || time == otherTime && id > otherId;
+        }
+    }
+}
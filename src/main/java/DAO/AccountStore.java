@@ -0,0 +1,34 @@
+package DAO;
+
+import java.util.List;
+
+import Model.Account;
+
+/**
+ * Where accounts are kept. AccountDAO keeps them in the H2 account table; InMemoryAccountStore keeps them on the heap.
+ *
+ * Every method reports failure the way AccountDAO always has: by returning null or an empty list, never by throwing.
+ */
+public interface AccountStore {
+    /**
+     * insert new account
+     * 
+     * @return newly created account(id, username, password), null if it could not be inserted, for example because
+     * the username is taken
+     */
+    Account insertAccount(Account account);
+
+    /**
+     * find the account with the username and password of account
+     * 
+     * @return the matching account including its account_id, null if there is none
+     */
+    Account login(Account account);
+
+    /**
+     * get all accounts
+     * 
+     * @return all accounts
+     */
+    List<Account> getAllAccounts();
+}
@@ -0,0 +1,33 @@
+package DAO;
+
+import java.util.List;
+
+import Model.Account;
+
+/**
+ * An InMemoryAccountStore whose inserts are written to a RecoveryLog, so accounts survive a restart.
+ */
+public class DurableAccountStore implements AccountStore {
+    private final InMemoryAccountStore accounts;
+    private final RecoveryLog recoveryLog;
+
+    DurableAccountStore(InMemoryAccountStore accounts, RecoveryLog recoveryLog) {
+        this.accounts = accounts;
+        this.recoveryLog = recoveryLog;
+    }
+
+    @Override
+    public Account insertAccount(Account account) {
+        return recoveryLog.insertAccount(account);
+    }
+
+    @Override
+    public Account login(Account account) {
+        return accounts.login(account);
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        return accounts.getAllAccounts();
+    }
+}
@@ -0,0 +1,79 @@
+package DAO;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import Model.Message;
+
+/**
+ * An InMemoryMessageStore whose changes are written to a RecoveryLog, so messages survive a restart. Reads go straight
+ * to the in-memory store.
+ */
+public class DurableMessageStore implements MessageStore {
+    private final InMemoryMessageStore messages;
+    private final RecoveryLog recoveryLog;
+
+    DurableMessageStore(InMemoryMessageStore messages, RecoveryLog recoveryLog) {
+        this.messages = messages;
+        this.recoveryLog = recoveryLog;
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        return recoveryLog.insertMessage(message);
+    }
+
+    @Override
+    public List<Message> insertMessages(List<Message> messageList) {
+        return recoveryLog.insertMessages(messageList);
+    }
+
+    @Override
+    public List<Message> getMessagesAfterId(int after_id, int limit) {
+        return messages.getMessagesAfterId(after_id, limit);
+    }
+
+    @Override
+    public Message getMessageById(int input_message_id) {
+        return messages.getMessageById(input_message_id);
+    }
+
+    @Override
+    public Message deleteMessageById(int input_message_id) {
+        return recoveryLog.deleteMessage(input_message_id);
+    }
+
+    @Override
+    public Message updateMessageById(int input_message_id, String message_text) {
+        return recoveryLog.updateMessage(input_message_id, message_text);
+    }
+
+    @Override
+    public List<Message> getMessagesFromAccountIdAfterId(int input_account_id, int after_id, int limit) {
+        return messages.getMessagesFromAccountIdAfterId(input_account_id, after_id, limit);
+    }
+
+    @Override
+    public List<Message> getLatestMessagesFromAccountIdBefore(int input_account_id, long before, int after_id,
+            int limit) {
+        return messages.getLatestMessagesFromAccountIdBefore(input_account_id, before, after_id, limit);
+    }
+
+    @Override
+    public int streamMessages(Integer input_account_id, int after_id, int limit, Consumer<Message> consumer) {
+        return messages.streamMessages(input_account_id, after_id, limit, consumer);
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return true;
+    }
+
+    /**
+     * Snapshot both stores and close the RecoveryLog, which the DurableAccountStore beside this one shares.
+     */
+    @Override
+    public void close() {
+        recoveryLog.close();
+    }
+}
@@ -0,0 +1,32 @@
+package DAO;
+
+import java.util.Locale;
+
+/**
+ * When the changes a store appends to a file are forced to disk, for LogMessageStore's segments and RecoveryLog's
+ * write-ahead log.
+ */
+public enum FsyncPolicy {
+    /**
+     * Before every insert, update or delete returns; a batch insert is forced once. Nothing acknowledged is lost to a
+     * crash of the machine.
+     */
+    ALWAYS,
+    /**
+     * Every fsync interval, by a background thread. A crash of the machine loses at most that much, a crash of the
+     * process alone loses nothing.
+     */
+    INTERVAL,
+    /**
+     * Only when the store is closed, leaving the rest to the operating system.
+     */
+    NEVER;
+
+    /**
+     * @param name a policy name, in any case, e.g. "always", "interval" or "never"
+     * @throws IllegalArgumentException if there is no policy with that name
+     */
+    public static FsyncPolicy fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,125 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import Model.Account;
+import Util.IntObjectMap;
+
+/**
+ * An account store that keeps every account on the heap, for running without a database.
+ *
+ * Accounts are held by account_id in a primitive int-keyed map and by username, which is unique as it is in the
+ * account table. Account ids are handed out in increasing order starting at 1. Nothing survives a restart.
+ */
+public class InMemoryAccountStore implements AccountStore {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final IntObjectMap<Account> accountsById = new IntObjectMap<>();
+    private final Map<String, Account> accountsByUsername = new HashMap<>();
+    private int lastAccountId;
+
+    @Override
+    public Account insertAccount(Account account) {
+        if (account.getUsername() == null || account.getPassword() == null) return null;
+        lock.lock();
+        try {
+            if (accountsByUsername.containsKey(account.getUsername())) return null;
+            Account inserted = new Account(++lastAccountId, account.getUsername(), account.getPassword());
+            accountsById.put(inserted.getAccount_id(), inserted);
+            accountsByUsername.put(inserted.getUsername(), inserted);
+            return inserted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Account login(Account account) {
+        lock.lock();
+        try {
+            Account existing = accountsByUsername.get(account.getUsername());
+            if (existing == null || !existing.getPassword().equals(account.getPassword())) return null;
+            return existing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Account> getAllAccounts() {
+        List<Account> accounts = new ArrayList<>();
+        lock.lock();
+        try {
+            accountsById.forEachValue(accounts::add);
+        } finally {
+            lock.unlock();
+        }
+        return accounts;
+    }
+
+    /**
+     * @return the number of accounts stored
+     */
+    int count() {
+        lock.lock();
+        try {
+            return accountsById.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the id given to the latest account inserted
+     */
+    int getLastAccountId() {
+        lock.lock();
+        try {
+            return lastAccountId;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Carry on handing out ids after lastAccountId, as a store that had already handed that many out would.
+     */
+    void restoreLastAccountId(int lastAccountId) {
+        lock.lock();
+        try {
+            this.lastAccountId = Math.max(this.lastAccountId, lastAccountId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put back an account that was stored before, keeping its id. Ids handed out from then on come after it.
+     */
+    void restore(Account account) {
+        lock.lock();
+        try {
+            accountsById.put(account.getAccount_id(), account);
+            accountsByUsername.put(account.getUsername(), account);
+            lastAccountId = Math.max(lastAccountId, account.getAccount_id());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take an account back out, for an insert that could not be made durable. Its id is not handed out again.
+     */
+    void remove(Account account) {
+        lock.lock();
+        try {
+            accountsById.remove(account.getAccount_id());
+            accountsByUsername.remove(account.getUsername());
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import Model.Message;
+import Util.IntObjectMap;
+import Util.SortedIntList;
+
+/**
+ * A message store that keeps every message on the heap, for running without a database.
+ *
+ * Messages are held in a primitive int-keyed map by message_id, and their ids in ascending order both overall and per
+ * posted_by, so reads never touch JDBC or box an id: paging by message id is a binary search followed by a walk of
+ * the sorted ids. An AccountMessageIndex also keeps each account's message ids ordered by time_posted_epoch, which does
+ * for newest-first listings what message_posted_by_time_idx does in H2.
+ *
+ * Message ids are handed out in increasing order starting at 1, like the identity column of the message table.
+ * posted_by is not checked against the accounts here: MessageService validates it against its account index before
+ * a message reaches any store. Nothing survives a restart.
+ *
+ * Reads share a read lock and writes take the write lock, so readers never block each other. A ReentrantReadWriteLock
+ * is used rather than synchronized so that waiting callers never pin a carrier thread.
+ */
+public class InMemoryMessageStore implements MessageStore {
+    /**
+     * How many messages streamMessages copies out under the read lock at a time, so a slow consumer never holds the
+     * lock.
+     */
+    private static final int STREAM_CHUNK_SIZE = 256;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntObjectMap<Message> messagesById = new IntObjectMap<>(1024);
+    private final SortedIntList messageIds = new SortedIntList(1024);
+    private final AccountMessageIndex messagesByAccount = new AccountMessageIndex();
+    private int lastMessageId;
+
+    @Override
+    public Message insertMessage(Message message) {
+        lock.writeLock().lock();
+        try {
+            return insert(message);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        List<Message> insertedMessages = new ArrayList<>(messages.size());
+        lock.writeLock().lock();
+        try {
+            for (Message message : messages) insertedMessages.add(insert(message));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return insertedMessages;
+    }
+
+    private Message insert(Message message) {
+        Message inserted = new Message(++lastMessageId, message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
+        messagesById.put(inserted.getMessage_id(), inserted);
+        messageIds.add(inserted.getMessage_id());
+        messagesByAccount.add(inserted.getPosted_by(), inserted.getTime_posted_epoch(), inserted.getMessage_id());
+        return inserted;
+    }
+
+    @Override
+    public List<Message> getMessagesAfterId(int after_id, int limit) {
+        lock.readLock().lock();
+        try {
+            return page(messageIds, after_id, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message getMessageById(int input_message_id) {
+        lock.readLock().lock();
+        try {
+            return messagesById.get(input_message_id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message deleteMessageById(int input_message_id) {
+        lock.writeLock().lock();
+        try {
+            Message deleted = messagesById.remove(input_message_id);
+            if (deleted == null) return null;
+            messageIds.remove(input_message_id);
+            messagesByAccount.remove(deleted.getPosted_by(), deleted.getTime_posted_epoch(), input_message_id);
+            return deleted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Message updateMessageById(int input_message_id, String message_text) {
+        lock.writeLock().lock();
+        try {
+            Message existing = messagesById.get(input_message_id);
+            if (existing == null) return null;
+            // Messages handed out earlier are never changed, the updated one replaces them
+            Message updated = new Message(input_message_id, existing.getPosted_by(), message_text,
+                    existing.getTime_posted_epoch());
+            messagesById.put(input_message_id, updated);
+            return existing;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesFromAccountIdAfterId(int input_account_id, int after_id, int limit) {
+        lock.readLock().lock();
+        try {
+            SortedIntList accountIds = messagesByAccount.ids(input_account_id);
+            return accountIds == null ? new ArrayList<>() : page(accountIds, after_id, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getLatestMessagesFromAccountIdBefore(int input_account_id, long before, int after_id,
+            int limit) {
+        List<Message> messages = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            messagesByAccount.latest(input_account_id, before, after_id, limit,
+                    message_id -> messages.add(messagesById.get(message_id)));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return messages;
+    }
+
+    @Override
+    public int streamMessages(Integer input_account_id, int after_id, int limit, Consumer<Message> consumer) {
+        int count = 0;
+        int cursor = after_id;
+        while (count < limit) {
+            List<Message> chunk;
+            lock.readLock().lock();
+            try {
+                SortedIntList ids = input_account_id == null
+                        ? messageIds
+                        : messagesByAccount.ids(input_account_id.intValue());
+                if (ids == null) break;
+                chunk = page(ids, cursor, Math.min(STREAM_CHUNK_SIZE, limit - count));
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (chunk.isEmpty()) break;
+            for (Message message : chunk) consumer.accept(message);
+            count += chunk.size();
+            cursor = chunk.get(chunk.size() - 1).getMessage_id();
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return true;
+    }
+
+    /**
+     * @return the id given to the latest message inserted, whether or not it has since been deleted
+     */
+    int getLastMessageId() {
+        lock.readLock().lock();
+        try {
+            return lastMessageId;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of messages stored
+     */
+    int count() {
+        lock.readLock().lock();
+        try {
+            return messagesById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Carry on handing out ids after lastMessageId, as a store that had already handed that many out would.
+     */
+    void restoreLastMessageId(int lastMessageId) {
+        lock.writeLock().lock();
+        try {
+            this.lastMessageId = Math.max(this.lastMessageId, lastMessageId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Put back a message that was stored before, keeping its id and replacing any message with that id. Ids handed
+     * out from then on come after it.
+     */
+    void restore(Message message) {
+        lock.writeLock().lock();
+        try {
+            Message previous = messagesById.put(message.getMessage_id(), message);
+            if (previous != null) {
+                messagesByAccount.remove(previous.getPosted_by(), previous.getTime_posted_epoch(),
+                        previous.getMessage_id());
+            }
+            messageIds.add(message.getMessage_id());
+            messagesByAccount.add(message.getPosted_by(), message.getTime_posted_epoch(), message.getMessage_id());
+            lastMessageId = Math.max(lastMessageId, message.getMessage_id());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return up to limit messages whose ids come after after_id in ids, in ascending message id order
+     */
+    private List<Message> page(SortedIntList ids, int after_id, int limit) {
+        int from = ids.indexAfter(after_id);
+        int to = (int) Math.min((long) from + limit, ids.size());
+        List<Message> messages = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) messages.add(messagesById.get(ids.get(i)));
+        return messages;
+    }
+}
@@ -0,0 +1,625 @@
+package DAO;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import Model.Message;
+import Util.SortedIntList;
+
+/**
+ * A message store that persists messages as an append-only log of records in memory-mapped segment files, for a
+ * write pattern that is mostly inserts with the odd update or delete.
+ *
+ * Every change is one record appended to the newest segment: a message record for an insert, another message record,
+ * a new version, for an update, and a tombstone for a delete. A record is its type, message_id, posted_by,
+ * time_posted_epoch, the length and UTF-8 bytes of its text and a CRC32 of all of that. Segments are segmentBytes
+ * files named by their sequence number; a record that does not fit in the newest one starts the next. Records are
+ * never rewritten, so the space held by old versions and deleted messages is not reclaimed.
+ *
+ * The location of each message's latest record is kept in an array indexed by message_id - 1, since ids are handed
+ * out in increasing order starting at 1. getMessageById reads the record in place from the mapping: no read call and
+ * no buffer between the page cache and the Message. The per-account listings come from an AccountMessageIndex. Both
+ * are rebuilt when the store is opened by replaying every segment in order; replay stops at the first record whose
+ * checksum does not match, which is where a crash cut the last write short, and the rest of that segment is cleared.
+ *
+ * How soon a change reaches the disk is set by the FsyncPolicy. Reads share a read lock and writes take the write
+ * lock, as in the in-memory stores.
+ */
+public class LogMessageStore implements MessageStore {
+    /**
+     * How many messages streamMessages copies out under the read lock at a time, so a slow consumer never holds the
+     * lock.
+     */
+    private static final int STREAM_CHUNK_SIZE = 256;
+    /**
+     * Bytes before the text of a record: type, message_id, posted_by, time_posted_epoch and text length.
+     */
+    private static final int RECORD_HEADER_BYTES = 19;
+    /**
+     * Bytes after the text of a record: the CRC32 of the header and the text.
+     */
+    private static final int CHECKSUM_BYTES = 4;
+    /**
+     * Record types. A zeroed byte, where nothing has been written yet, is neither.
+     */
+    private static final byte MESSAGE_RECORD = 1;
+    private static final byte TOMBSTONE_RECORD = 2;
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Segment> segments = new ArrayList<>();
+    /**
+     * Segments written to since they were last forced.
+     */
+    private final List<Segment> unflushedSegments = new ArrayList<>();
+    private final AccountMessageIndex messagesByAccount = new AccountMessageIndex();
+    private final CRC32 writeChecksum = new CRC32();
+    private final ScheduledExecutorService flusher;
+    /**
+     * The location of the latest record of each message, by message_id - 1: the segment's index plus one in the
+     * high 32 bits and the record's offset in the low 32. 0 if the message was deleted or never existed.
+     */
+    private long[] locations = new long[1024];
+    private int lastMessageId;
+    private int liveMessages;
+    private long fsyncCount;
+
+    /**
+     * Open the log in a directory, replaying whatever segments are already there.
+     *
+     * @param directory where the segment files are kept, created if missing
+     * @param segmentBytes the size of each new segment file
+     * @param fsyncPolicy when appended changes are forced to disk
+     * @param fsyncIntervalMillis how often they are forced under FsyncPolicy.INTERVAL
+     * @throws IOException if the directory or a segment could not be opened
+     */
+    public LogMessageStore(Path directory, int segmentBytes, FsyncPolicy fsyncPolicy, long fsyncIntervalMillis)
+            throws IOException {
+        this.directory = directory;
+        this.segmentBytes = Math.max(1 << 16, segmentBytes);
+        this.fsyncPolicy = fsyncPolicy;
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+        long records = 0;
+        for (Path path : segmentFiles(directory)) {
+            Segment segment = Segment.open(path, segments.size(), this.segmentBytes);
+            segments.add(segment);
+            records += replay(segment);
+        }
+        System.out.println("Replayed " + records + " message log records from " + segments.size() + " segments in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-log-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = Math.max(1, fsyncIntervalMillis);
+            flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        lock.writeLock().lock();
+        try {
+            Message inserted = insert(message);
+            if (inserted != null) appended();
+            return inserted;
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        List<Message> insertedMessages = new ArrayList<>(messages.size());
+        lock.writeLock().lock();
+        try {
+            int segmentCount = segments.size();
+            int used = segments.isEmpty() ? 0 : segments.get(segmentCount - 1).used;
+            try {
+                for (Message message : messages) insertedMessages.add(insert(message));
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                undoInserts(insertedMessages, segmentCount, used);
+                return null;
+            }
+            appended();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return insertedMessages;
+    }
+
+    private Message insert(Message message) throws IOException {
+        byte[] text = encode(message.getMessage_text());
+        if (text == null) return null;
+        int message_id = lastMessageId + 1;
+        long location = append(MESSAGE_RECORD, message_id, message.getPosted_by(), message.getTime_posted_epoch(),
+                text);
+        lastMessageId = message_id;
+        locate(message_id, location);
+        liveMessages++;
+        messagesByAccount.add(message.getPosted_by(), message.getTime_posted_epoch(), message_id);
+        return new Message(message_id, message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
+    }
+
+    /**
+     * Take back the inserts of a batch that failed part way: forget the messages and cut the log back to where the
+     * batch started, so that none of it is replayed either.
+     */
+    private void undoInserts(List<Message> insertedMessages, int segmentCount, int used) {
+        for (Message inserted : insertedMessages) {
+            if (inserted == null) continue;
+            locations[inserted.getMessage_id() - 1] = 0;
+            liveMessages--;
+            messagesByAccount.remove(inserted.getPosted_by(), inserted.getTime_posted_epoch(),
+                    inserted.getMessage_id());
+            lastMessageId = Math.min(lastMessageId, inserted.getMessage_id() - 1);
+        }
+        while (segments.size() > segmentCount) {
+            Segment segment = segments.remove(segments.size() - 1);
+            unflushedSegments.remove(segment);
+            segment.delete();
+        }
+        if (segmentCount > 0) segments.get(segmentCount - 1).clear(used);
+    }
+
+    @Override
+    public List<Message> getMessagesAfterId(int after_id, int limit) {
+        lock.readLock().lock();
+        try {
+            return page(after_id, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message getMessageById(int input_message_id) {
+        lock.readLock().lock();
+        try {
+            return read(input_message_id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message deleteMessageById(int input_message_id) {
+        lock.writeLock().lock();
+        try {
+            Message deleted = read(input_message_id);
+            if (deleted == null) return null;
+            append(TOMBSTONE_RECORD, input_message_id, deleted.getPosted_by(), deleted.getTime_posted_epoch(),
+                    new byte[0]);
+            locations[input_message_id - 1] = 0;
+            liveMessages--;
+            messagesByAccount.remove(deleted.getPosted_by(), deleted.getTime_posted_epoch(), input_message_id);
+            appended();
+            return deleted;
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Message updateMessageById(int input_message_id, String message_text) {
+        lock.writeLock().lock();
+        try {
+            Message existing = read(input_message_id);
+            byte[] text = encode(message_text);
+            if (existing == null || text == null) return null;
+            locate(input_message_id, append(MESSAGE_RECORD, input_message_id, existing.getPosted_by(),
+                    existing.getTime_posted_epoch(), text));
+            appended();
+            return existing;
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesFromAccountIdAfterId(int input_account_id, int after_id, int limit) {
+        lock.readLock().lock();
+        try {
+            SortedIntList accountIds = messagesByAccount.ids(input_account_id);
+            return accountIds == null ? new ArrayList<>() : page(accountIds, after_id, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getLatestMessagesFromAccountIdBefore(int input_account_id, long before, int after_id,
+            int limit) {
+        List<Message> messages = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            messagesByAccount.latest(input_account_id, before, after_id, limit,
+                    message_id -> messages.add(read(message_id)));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return messages;
+    }
+
+    @Override
+    public int streamMessages(Integer input_account_id, int after_id, int limit, Consumer<Message> consumer) {
+        int count = 0;
+        int cursor = after_id;
+        while (count < limit) {
+            List<Message> chunk;
+            lock.readLock().lock();
+            try {
+                int chunkLimit = Math.min(STREAM_CHUNK_SIZE, limit - count);
+                if (input_account_id == null) {
+                    chunk = page(cursor, chunkLimit);
+                } else {
+                    SortedIntList accountIds = messagesByAccount.ids(input_account_id.intValue());
+                    if (accountIds == null) break;
+                    chunk = page(accountIds, cursor, chunkLimit);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (chunk.isEmpty()) break;
+            for (Message message : chunk) consumer.accept(message);
+            count += chunk.size();
+            cursor = chunk.get(chunk.size() - 1).getMessage_id();
+        }
+        return count;
+    }
+
+    /**
+     * Reads are answered from the mapped segments, which the operating system keeps in the page cache.
+     */
+    @Override
+    public boolean isInMemory() {
+        return true;
+    }
+
+    /**
+     * Force every segment to disk, whatever the FsyncPolicy, and close the files.
+     */
+    @Override
+    public void close() {
+        if (flusher != null) flusher.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+                segment.close();
+            }
+            unflushedSegments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many messages are stored
+     */
+    public int getMessageCount() {
+        lock.readLock().lock();
+        try {
+            return liveMessages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many segment files the log has
+     */
+    public int getSegmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many times a segment has been forced to disk
+     */
+    public long getFsyncCount() {
+        lock.readLock().lock();
+        try {
+            return fsyncCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the segment files in a directory, in sequence order
+     */
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) files.add(path);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Apply the records of a segment to the index, and find where the next record is to be appended.
+     *
+     * @return how many records were replayed
+     */
+    private long replay(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        CRC32 checksum = new CRC32();
+        int offset = 0;
+        long records = 0;
+        while (offset + RECORD_HEADER_BYTES + CHECKSUM_BYTES <= buffer.capacity()) {
+            byte type = buffer.get(offset);
+            if (type == 0) break;
+            int length = buffer.getShort(offset + 17);
+            int end = offset + RECORD_HEADER_BYTES + length;
+            int message_id = buffer.getInt(offset + 1);
+            if ((type != MESSAGE_RECORD && type != TOMBSTONE_RECORD) || message_id < 1 || length < 0
+                    || end + CHECKSUM_BYTES > buffer.capacity()
+                    || buffer.getInt(end) != checksum(checksum, buffer, offset, end)) {
+                System.out.println("Message log " + segment.path + " has a torn or corrupt record at offset " + offset
+                        + ", discarding the rest of the segment");
+                segment.used = buffer.capacity();
+                segment.clear(offset);
+                return records;
+            }
+            long previous = message_id <= lastMessageId ? locations[message_id - 1] : 0;
+            if (previous != 0) unindex(message_id, previous);
+            if (type == MESSAGE_RECORD) {
+                locate(message_id, (long) (segment.index + 1) << 32 | offset);
+                messagesByAccount.add(buffer.getInt(offset + 5), buffer.getLong(offset + 9), message_id);
+                if (previous == 0) liveMessages++;
+            } else {
+                locate(message_id, 0);
+                if (previous != 0) liveMessages--;
+            }
+            lastMessageId = Math.max(lastMessageId, message_id);
+            offset = end + CHECKSUM_BYTES;
+            records++;
+        }
+        segment.used = offset;
+        return records;
+    }
+
+    private void unindex(int message_id, long location) {
+        ByteBuffer buffer = segments.get((int) (location >>> 32) - 1).buffer;
+        int offset = (int) location;
+        messagesByAccount.remove(buffer.getInt(offset + 5), buffer.getLong(offset + 9), message_id);
+    }
+
+    private static int checksum(CRC32 checksum, ByteBuffer buffer, int from, int to) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(from).limit(to);
+        checksum.reset();
+        checksum.update(view);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Record where the latest record of a message is, 0 if it has been deleted.
+     */
+    private void locate(int message_id, long location) {
+        if (message_id > locations.length) {
+            locations = Arrays.copyOf(locations, Math.max(message_id, locations.length * 2));
+        }
+        locations[message_id - 1] = location;
+    }
+
+    /**
+     * @return the text as UTF-8, or null if it is missing or too long for a record
+     */
+    private byte[] encode(String message_text) {
+        if (message_text == null) return null;
+        byte[] text = message_text.getBytes(StandardCharsets.UTF_8);
+        return text.length <= Short.MAX_VALUE && RECORD_HEADER_BYTES + text.length + CHECKSUM_BYTES <= segmentBytes
+                ? text : null;
+    }
+
+    /**
+     * Append a record to the newest segment, starting a new segment if it does not fit. Called with the write lock
+     * held.
+     *
+     * @return the location of the record
+     * @throws IOException if a new segment was needed and could not be created
+     */
+    private long append(byte type, int message_id, int posted_by, long time_posted_epoch, byte[] text)
+            throws IOException {
+        int recordBytes = RECORD_HEADER_BYTES + text.length + CHECKSUM_BYTES;
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.used + recordBytes > segment.buffer.capacity()) {
+            segment = Segment.open(directory.resolve(String.format("%010d%s", segments.size() + 1, SEGMENT_SUFFIX)),
+                    segments.size(), segmentBytes);
+            segments.add(segment);
+        }
+        int offset = segment.used;
+        ByteBuffer writer = segment.writer;
+        writer.position(offset);
+        writer.put(type).putInt(message_id).putInt(posted_by).putLong(time_posted_epoch).putShort((short) text.length)
+                .put(text);
+        int end = offset + RECORD_HEADER_BYTES + text.length;
+        // The checksum goes last: until it is written the record does not count as written
+        writer.putInt(checksum(writeChecksum, segment.buffer, offset, end));
+        segment.used = end + CHECKSUM_BYTES;
+        if (!unflushedSegments.contains(segment)) unflushedSegments.add(segment);
+        return (long) (segment.index + 1) << 32 | offset;
+    }
+
+    /**
+     * Called with the write lock held once a change has been appended: under FsyncPolicy.ALWAYS, force it to disk.
+     */
+    private void appended() {
+        if (fsyncPolicy != FsyncPolicy.ALWAYS) return;
+        for (Segment segment : unflushedSegments) segment.buffer.force();
+        fsyncCount += unflushedSegments.size();
+        unflushedSegments.clear();
+    }
+
+    /**
+     * Force the segments written to since the last flush. The forcing happens outside the lock, so writers are not
+     * held up by the disk; anything they append meanwhile is picked up by the next flush.
+     */
+    private void flush() {
+        List<Segment> flushing;
+        lock.writeLock().lock();
+        try {
+            if (unflushedSegments.isEmpty()) return;
+            flushing = new ArrayList<>(unflushedSegments);
+            unflushedSegments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (Segment segment : flushing) segment.buffer.force();
+        lock.writeLock().lock();
+        try {
+            fsyncCount += flushing.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the message as of its latest record, or null if there is no such message
+     */
+    private Message read(int message_id) {
+        if (message_id < 1 || message_id > lastMessageId) return null;
+        long location = locations[message_id - 1];
+        if (location == 0) return null;
+        ByteBuffer buffer = segments.get((int) (location >>> 32) - 1).buffer;
+        int offset = (int) location;
+        int length = buffer.getShort(offset + 17);
+        byte[] text = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + RECORD_HEADER_BYTES);
+        view.get(text, 0, length);
+        return new Message(message_id, buffer.getInt(offset + 5), new String(text, StandardCharsets.UTF_8),
+                buffer.getLong(offset + 9));
+    }
+
+    /**
+     * @return up to limit messages with a message id greater than after_id, in ascending message id order
+     */
+    private List<Message> page(int after_id, int limit) {
+        List<Message> messages = new ArrayList<>(Math.min(limit, 64));
+        for (int message_id = Math.max(after_id, 0) + 1; message_id <= lastMessageId; message_id++) {
+            Message message = read(message_id);
+            if (message == null) continue;
+            messages.add(message);
+            if (messages.size() == limit) break;
+        }
+        return messages;
+    }
+
+    /**
+     * @return up to limit messages whose ids come after after_id in ids, in ascending message id order
+     */
+    private List<Message> page(SortedIntList ids, int after_id, int limit) {
+        int from = ids.indexAfter(after_id);
+        int to = (int) Math.min((long) from + limit, ids.size());
+        List<Message> messages = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) messages.add(read(ids.get(i)));
+        return messages;
+    }
+
+    /**
+     * One segment file, mapped whole. Records are appended at used.
+     */
+    private static final class Segment {
+        final int index;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        /**
+         * A view of buffer for relative puts, only used with the write lock held.
+         */
+        final ByteBuffer writer;
+        int used;
+
+        private Segment(int index, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.writer = buffer.duplicate();
+        }
+
+        /**
+         * Map a segment file, creating it with newSegmentBytes if it does not exist. An existing file keeps its size.
+         */
+        static Segment open(Path path, int index, int newSegmentBytes) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                long size = channel.size() > 0 ? channel.size() : newSegmentBytes;
+                return new Segment(index, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Zero the segment from offset up to used, so nothing past offset is ever replayed, and append from there.
+         */
+        void clear(int offset) {
+            for (int i = offset; i < used; i++) buffer.put(i, (byte) 0);
+            used = offset;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+
+        void delete() {
+            close();
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+    }
+}
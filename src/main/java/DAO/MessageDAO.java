@@ -3,6 +3,7 @@ package DAO;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -10,14 +11,22 @@ import java.sql.SQLException;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.UncheckedSQLException;
 
 // DAO is the class that mediates the transformation of data between the format objects to rows in a database.
-public class MessageDAO {
+// This one keeps messages in the H2 message table.
+public class MessageDAO implements MessageStore {
+    /**
+     * Rows fetched per round trip when streaming a listing.
+     */
+    static final int STREAM_FETCH_SIZE = Integer.getInteger("messages.stream.fetchSize", 500);
+
     /**
      * insert new message into the message table
      * 
      * @return newly created message(message_id, posted_by, message_text, time_posted_epoch)
      */
+    @Override
     public Message insertMessage(Message message) {
         Connection connection = ConnectionUtil.getConnection();
         try {
@@ -41,6 +50,8 @@ public class MessageDAO {
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
 
         // If try fails, return null
@@ -48,33 +59,102 @@ public class MessageDAO {
     }
 
     /**
-     * get all messages from the message table
+     * insert several messages into the message table in one transaction, using a single JDBC batch. A message whose
+     * posted_by does not refer to an existing account is skipped rather than failing the whole batch: each row is
+     * inserted with INSERT ... SELECT from the account table, so it inserts nothing when the account is missing.
      * 
-     * @return all messages
+     * @param messages the messages to insert
+     * @return a list the same size as messages holding the newly created message, or null for a message that was
+     * skipped. Null if the batch failed, in which case nothing was inserted
      */
-    public List<Message> getAllMessages() {
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        Connection connection = ConnectionUtil.getConnection();
+        boolean autoCommit = true;
+        try {
+            autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+
+            // SQL Logic
+            String sql = "INSERT INTO message(posted_by, message_text, time_posted_epoch) "
+                    + "SELECT ?, ?, ? FROM account WHERE account_id = ?;";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+
+            // Write preparedStatement setInt, setString, setLong for every message
+            for (Message message : messages) {
+                preparedStatement.setInt(1, message.getPosted_by());
+                preparedStatement.setString(2, message.getMessage_text());
+                preparedStatement.setLong(3, message.getTime_posted_epoch());
+                preparedStatement.setInt(4, message.getPosted_by());
+                preparedStatement.addBatch();
+            }
+
+            // Execute the batch, then match the generated keys up with the rows that were inserted
+            int[] numOfRowsInserted = preparedStatement.executeBatch();
+            ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
+            List<Message> insertedMessages = new ArrayList<>(messages.size());
+            for (int i = 0; i < messages.size(); i++) {
+                Message message = messages.get(i);
+                if (numOfRowsInserted[i] > 0 && pkeyResultSet.next()) {
+                    int generated_message_id = (int) pkeyResultSet.getLong(1);
+                    insertedMessages.add(new Message(generated_message_id, message.getPosted_by(),
+                            message.getMessage_text(), message.getTime_posted_epoch()));
+                } else {
+                    insertedMessages.add(null);
+                }
+            }
+            connection.commit();
+            return insertedMessages;
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+            try {
+                connection.rollback();
+            } catch(SQLException rollbackException) {
+                System.out.println(rollbackException.getMessage());
+            }
+        } finally {
+            try {
+                connection.setAutoCommit(autoCommit);
+            } catch(SQLException e) {
+                System.out.println(e.getMessage());
+            }
+            ConnectionUtil.releaseConnection(connection);
+        }
+
+        // If try fails, return null
+        return null;
+    }
+
+    /**
+     * get one page of messages from the message table, ordered by message id. The page is found with a keyset
+     * condition on the primary key, so later pages cost the same as the first.
+     * 
+     * @param after_id only messages with a message id greater than this are returned, 0 for the first page
+     * @param limit the maximum number of messages to return
+     * @return messages in ascending message id order
+     */
+    @Override
+    public List<Message> getMessagesAfterId(int after_id, int limit) {
         Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
         try {
             // SQL Logic
-            String sql = "SELECT * FROM message;";
+            String sql = "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?;";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
+            // Write preparedStatement setInt
+            preparedStatement.setInt(1, after_id);
+            preparedStatement.setInt(2, limit);
+
             // Execute preparedStatement and get the ResultSet
             ResultSet resultSet = preparedStatement.executeQuery();
             while (resultSet.next()) {
-                // Get all attributes
-                int message_id = resultSet.getInt("message_id");
-                int posted_by = resultSet.getInt("posted_by");
-                String message_text = resultSet.getString("message_text");
-                Long time_posted_epoch = resultSet.getLong("time_posted_epoch");
-
-                // Create message object and add to list
-                Message message = new Message(message_id, posted_by, message_text, time_posted_epoch);
-                messages.add(message);
+                messages.add(readMessage(resultSet));
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
 
         // If try fails, return empty list
@@ -86,6 +166,7 @@ public class MessageDAO {
      * 
      * @return message with message id
      */
+    @Override
     public Message getMessageById(int input_message_id) {
         Connection connection = ConnectionUtil.getConnection();
         try {
@@ -110,6 +191,8 @@ public class MessageDAO {
            }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
 
         // If try fails, return null
@@ -117,28 +200,30 @@ public class MessageDAO {
     }
 
     /**
-     * delete message from the message table with message id
+     * delete message from the message table with message id. The deleted row is read back from H2's OLD TABLE data
+     * change delta table, so the delete and the read are one statement on one connection and no other writer can
+     * change the row in between.
      * 
      * @return deleted message
      */
+    @Override
     public Message deleteMessageById(int input_message_id) {
         Connection connection = ConnectionUtil.getConnection();
         try {
-            // Save message to return
-            Message savedMessage = getMessageById(input_message_id);
-
             // SQL Logic
-            String sql = "DELETE FROM message WHERE message_id = ?";
+            String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id = ?);";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             // Write preparedStatement setInt
             preparedStatement.setInt(1, input_message_id);
 
-            // Execute preparedStatement and get the the number of rows that were deleted
-            int numOfRowsDeleted = preparedStatement.executeUpdate();
-            if (numOfRowsDeleted > 0) return savedMessage;
+            // Execute preparedStatement and get the row as it was before it was deleted
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) return readMessage(resultSet);
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
 
         // If try fails, return null
@@ -146,27 +231,30 @@ public class MessageDAO {
     }
 
     /**
-     * update message in the message table with message id
+     * update message in the message table with message id. The row as it was before the update is read back from
+     * H2's OLD TABLE data change delta table in the same statement.
      * 
-     * @return updated message
+     * @return the message before the update
      */
+    @Override
     public Message updateMessageById(int input_message_id, String message_text) {
         Connection connection = ConnectionUtil.getConnection();
         try {
             // SQL Logic
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?;";
+            String sql = "SELECT * FROM OLD TABLE (UPDATE message SET message_text = ? WHERE message_id = ?);";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             // Write preparedStatement setString, setInt
             preparedStatement.setString(1, message_text);
             preparedStatement.setInt(2, input_message_id);
 
-            // Execute preparedStatement and get the number of rows that were deleted
-            int numOfRowsUpdated = preparedStatement.executeUpdate();
-
-            if (numOfRowsUpdated > 0) return getMessageById(input_message_id);
+            // Execute preparedStatement and get the row as it was before the update
+            ResultSet resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) return readMessage(resultSet);
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
 
         // If try fails, return null
@@ -174,40 +262,161 @@ public class MessageDAO {
     }
 
     /**
-     * retrieve all messages in the message table with written by a particular user
+     * retrieve one page of messages written by a particular user, ordered by message id
      * 
-     * @return list of messages
+     * @param input_account_id the account whose messages are returned
+     * @param after_id only messages with a message id greater than this are returned, 0 for the first page
+     * @param limit the maximum number of messages to return
+     * @return list of messages in ascending message id order
      */
-    public List<Message> getAllMessagesFromAccountId(int input_account_id) {
+    @Override
+    public List<Message> getMessagesFromAccountIdAfterId(int input_account_id, int after_id, int limit) {
         Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
         try {
             // SQL Logic
-            String sql = "SELECT * FROM message WHERE posted_by = ?;";
+            String sql = "SELECT * FROM message WHERE posted_by = ? AND message_id > ? ORDER BY message_id LIMIT ?;";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             // Write preparedStatement setInt
             preparedStatement.setInt(1, input_account_id);
+            preparedStatement.setInt(2, after_id);
+            preparedStatement.setInt(3, limit);
 
             // Execute preparedStatement and get the result set
             ResultSet resultSet = preparedStatement.executeQuery();
             while (resultSet.next()) {
-                // Get all attributes
-                int message_id = resultSet.getInt("message_id");
-                int posted_by = resultSet.getInt("posted_by");
-                String message_text = resultSet.getString("message_text");
-                Long time_posted_epoch = resultSet.getLong("time_posted_epoch");
+                messages.add(readMessage(resultSet));
+            }
+        } catch(SQLException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
 
-                // Create message object and add to list
-                Message message = new Message(message_id, posted_by, message_text, time_posted_epoch);
-                messages.add(message);
+        // If try fails, return empty messages
+        return messages;
+    }
+
+    /**
+     * retrieve the latest messages written by a particular user that were posted before a point in time, newest
+     * first. The query walks message_posted_by_time_idx in index order, so it reads only the rows it returns.
+     * Ordering by posted_by first, although it is fixed, is what lets H2 see that the index order matches and skip
+     * the sort.
+     * 
+     * @param input_account_id the account whose messages are returned
+     * @param before only messages posted at or before this epoch time are returned
+     * @param after_id of the messages posted exactly at before, only those with a greater message id are returned.
+     * Integer.MAX_VALUE makes before exclusive
+     * @param limit the maximum number of messages to return
+     * @return list of messages, newest first, ties in ascending message id order
+     */
+    @Override
+    public List<Message> getLatestMessagesFromAccountIdBefore(int input_account_id, long before, int after_id,
+            int limit) {
+        Connection connection = ConnectionUtil.getConnection();
+        List<Message> messages = new ArrayList<>();
+        try {
+            // SQL Logic
+            String sql = "SELECT * FROM message WHERE posted_by = ? AND time_posted_epoch <= ? "
+                    + "AND (time_posted_epoch < ? OR message_id > ?) "
+                    + "ORDER BY posted_by, time_posted_epoch DESC, message_id LIMIT ?;";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            // Write preparedStatement setInt, setLong
+            preparedStatement.setInt(1, input_account_id);
+            preparedStatement.setLong(2, before);
+            preparedStatement.setLong(3, before);
+            preparedStatement.setInt(4, after_id);
+            preparedStatement.setInt(5, limit);
+
+            // Execute preparedStatement and get the result set
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                messages.add(readMessage(resultSet));
             }
         } catch(SQLException e) {
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
         }
 
         // If try fails, return empty messages
         return messages;
     }
 
+    /**
+     * stream messages from the message table to a consumer one row at a time, ordered by message id. The query runs
+     * with H2's lazy query execution so rows are produced as they are read rather than materialized up front.
+     * 
+     * @param input_account_id the account whose messages are streamed, or null for every account
+     * @param after_id only messages with a message id greater than this are streamed
+     * @param limit the maximum number of messages to stream
+     * @param consumer receives each message as its row is read
+     * @return the number of messages streamed
+     * @throws UncheckedSQLException if the rows could not be read, possibly after some were streamed. The connection
+     * is then closed rather than returned to the pool, since it may still be in lazy query execution mode
+     */
+    @Override
+    public int streamMessages(Integer input_account_id, int after_id, int limit, Consumer<Message> consumer) {
+        Connection connection = ConnectionUtil.getConnection();
+        int count = 0;
+        Statement settings = null;
+        boolean lazy = true;
+        try {
+            settings = connection.createStatement();
+            settings.execute("SET LAZY_QUERY_EXECUTION TRUE");
+
+            // SQL Logic, the same statements the paged listings use
+            PreparedStatement preparedStatement;
+            if (input_account_id == null) {
+                preparedStatement = connection.prepareStatement(
+                        "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?;");
+                preparedStatement.setInt(1, after_id);
+                preparedStatement.setInt(2, limit);
+            } else {
+                preparedStatement = connection.prepareStatement(
+                        "SELECT * FROM message WHERE posted_by = ? AND message_id > ? ORDER BY message_id LIMIT ?;");
+                preparedStatement.setInt(1, input_account_id);
+                preparedStatement.setInt(2, after_id);
+                preparedStatement.setInt(3, limit);
+            }
+            preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+
+            // Execute preparedStatement and hand each row over as soon as it is read
+            ResultSet resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                consumer.accept(readMessage(resultSet));
+                count++;
+            }
+            resultSet.close();
+            settings.execute("SET LAZY_QUERY_EXECUTION FALSE");
+            lazy = false;
+            settings.close();
+        } catch(SQLException e) {
+            throw new UncheckedSQLException(e);
+        } finally {
+            // A connection that may still be in lazy mode, after a failure here or in the consumer, is not pooled again
+            if (lazy) ConnectionUtil.discardConnection(connection);
+            ConnectionUtil.releaseConnection(connection);
+        }
+
+        return count;
+    }
+
+    /**
+     * map the current row of a result set over the message table to a message
+     * 
+     * @return message in the current row
+     */
+    private static Message readMessage(ResultSet resultSet) throws SQLException {
+        // Get all attributes
+        int message_id = resultSet.getInt("message_id");
+        int posted_by = resultSet.getInt("posted_by");
+        String message_text = resultSet.getString("message_text");
+        long time_posted_epoch = resultSet.getLong("time_posted_epoch");
+
+        return new Message(message_id, posted_by, message_text, time_posted_epoch);
+    }
+
 }
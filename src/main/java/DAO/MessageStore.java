@@ -0,0 +1,112 @@
+package DAO;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import Model.Message;
+
+/**
+ * Where messages are kept. MessageDAO keeps them in the H2 message table; InMemoryMessageStore keeps them on the heap.
+ *
+ * Every method reports failure the way MessageDAO always has: by returning null, an empty list or 0, never by
+ * throwing. The exceptions are streamMessages, which may have handed messages over already when it fails, and throws
+ * so that they are not taken for the whole listing, and a MessageDAO that can not get a connection from the pool,
+ * which throws the UncheckedSQLException of ConnectionUtil.getConnection() rather than pass for an empty result.
+ */
+public interface MessageStore {
+    /**
+     * insert a new message
+     * 
+     * @return newly created message(message_id, posted_by, message_text, time_posted_epoch), null if it could not be
+     * inserted
+     */
+    Message insertMessage(Message message);
+
+    /**
+     * insert several messages at once, all or nothing. A message whose posted_by does not refer to an existing
+     * account is skipped rather than failing the others.
+     * 
+     * @param messages the messages to insert
+     * @return a list the same size as messages holding the newly created message, or null for a message that was
+     * skipped. Null if the insert failed, in which case nothing was inserted
+     */
+    List<Message> insertMessages(List<Message> messages);
+
+    /**
+     * get one page of messages, ordered by message id
+     * 
+     * @param after_id only messages with a message id greater than this are returned, 0 for the first page
+     * @param limit the maximum number of messages to return
+     * @return messages in ascending message id order
+     */
+    List<Message> getMessagesAfterId(int after_id, int limit);
+
+    /**
+     * get message with message id
+     * 
+     * @return message with message id, null if there is none
+     */
+    Message getMessageById(int input_message_id);
+
+    /**
+     * delete message with message id
+     * 
+     * @return deleted message, null if there was none
+     */
+    Message deleteMessageById(int input_message_id);
+
+    /**
+     * update the text of message with message id
+     * 
+     * @return the message as it was before the update, null if there was none. The updated message is the same
+     * message with the new text
+     */
+    Message updateMessageById(int input_message_id, String message_text);
+
+    /**
+     * retrieve one page of messages written by a particular user, ordered by message id
+     * 
+     * @param input_account_id the account whose messages are returned
+     * @param after_id only messages with a message id greater than this are returned, 0 for the first page
+     * @param limit the maximum number of messages to return
+     * @return list of messages in ascending message id order
+     */
+    List<Message> getMessagesFromAccountIdAfterId(int input_account_id, int after_id, int limit);
+
+    /**
+     * retrieve the latest messages written by a particular user that were posted before a point in time, newest first
+     * 
+     * @param input_account_id the account whose messages are returned
+     * @param before only messages posted at or before this epoch time are returned
+     * @param after_id of the messages posted exactly at before, only those with a greater message id are returned.
+     * Integer.MAX_VALUE makes before exclusive
+     * @param limit the maximum number of messages to return
+     * @return list of messages, newest first, ties in ascending message id order
+     */
+    List<Message> getLatestMessagesFromAccountIdBefore(int input_account_id, long before, int after_id, int limit);
+
+    /**
+     * stream messages to a consumer one at a time, ordered by message id, without holding them all in memory
+     * 
+     * @param input_account_id the account whose messages are streamed, or null for every account
+     * @param after_id only messages with a message id greater than this are streamed
+     * @param limit the maximum number of messages to stream
+     * @param consumer receives each message as it is read
+     * @return the number of messages streamed
+     * @throws Util.UncheckedSQLException if the messages could not be read, possibly after some were streamed
+     */
+    int streamMessages(Integer input_account_id, int after_id, int limit, Consumer<Message> consumer);
+
+    /**
+     * @return true if reads are answered from memory, so a cache in front of the store would only add overhead
+     */
+    default boolean isInMemory() {
+        return false;
+    }
+
+    /**
+     * Stop any background work the store does. The store is not used afterwards.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,497 @@
+package DAO;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import Model.Message;
+import Util.SortedIntList;
+
+/**
+ * A message store that keeps its rows in direct (off-heap) memory, so that holding hundreds of millions of messages
+ * costs the garbage collector next to nothing: there is no Message, String or byte[] per stored message.
+ *
+ * Rows are fixed-width columns of message_id, posted_by, time_posted_epoch and the address and length of the text,
+ * in chunks of rowsPerChunk rows. Message ids are handed out in increasing order starting at 1, so a message's row is
+ * at message_id - 1 and no id-to-row map is needed; a deleted row has message_id 0. The texts are UTF-8 in a separate
+ * arena of arenaChunkBytes chunks, each entry prefixed with its message_id and length. A Message is only built when
+ * a row is read, on its way to being serialized.
+ *
+ * Updates append the new text and deletes leave theirs behind, so the arena collects dead entries. A background
+ * thread compacts any full chunk whose live bytes have fallen below compactBelowLiveRatio: it walks the chunk's
+ * entries, moves each one still referenced by its row to the end of the arena, then recycles the chunk for new
+ * appends. It moves a few hundred entries per write lock so readers are never held up for long.
+ *
+ * The per-account indexes behind the account listings are an AccountMessageIndex, primitive arrays on the heap.
+ * Reads share a read lock and writes take the write lock. Nothing survives a restart, and direct memory is bounded
+ * by -XX:MaxDirectMemorySize.
+ */
+public class OffHeapMessageStore implements MessageStore {
+    /**
+     * How many messages streamMessages copies out under the read lock at a time, so a slow consumer never holds the
+     * lock.
+     */
+    private static final int STREAM_CHUNK_SIZE = 256;
+    /**
+     * How many arena entries compaction moves under one write lock.
+     */
+    private static final int COMPACTION_STEP = 512;
+    /**
+     * Bytes before each text in the arena: its message_id and its length.
+     */
+    private static final int ENTRY_HEADER_BYTES = 6;
+
+    private final int rowChunkBits;
+    private final int rowChunkMask;
+    private final int arenaChunkBytes;
+    private final double compactBelowLiveRatio;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<RowChunk> rows = new ArrayList<>();
+    private final List<ArenaChunk> arena = new ArrayList<>();
+    private final Deque<ArenaChunk> freeArenaChunks = new ArrayDeque<>();
+    private final AccountMessageIndex messagesByAccount = new AccountMessageIndex();
+    private final ScheduledExecutorService compactor;
+    private ArenaChunk appendChunk;
+    private int lastMessageId;
+    private int liveMessages;
+    private long compactedChunks;
+
+    /**
+     * @param rowsPerChunk how many rows each chunk of columns holds, rounded up to a power of two
+     * @param arenaChunkBytes the size of each chunk of message text, at least large enough for one 255 character
+     * message
+     * @param compactBelowLiveRatio a full arena chunk whose live bytes fall below this share of its size is compacted
+     * @param compactionIntervalMillis how often compaction looks for chunks to compact, 0 disables compaction
+     */
+    public OffHeapMessageStore(int rowsPerChunk, int arenaChunkBytes, double compactBelowLiveRatio,
+            long compactionIntervalMillis) {
+        this.rowChunkBits = 32 - Integer.numberOfLeadingZeros(Math.max(2, rowsPerChunk) - 1);
+        this.rowChunkMask = (1 << rowChunkBits) - 1;
+        this.arenaChunkBytes = Math.max(4096, arenaChunkBytes);
+        this.compactBelowLiveRatio = compactBelowLiveRatio;
+        if (compactionIntervalMillis > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "message-arena-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compact, compactionIntervalMillis, compactionIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    @Override
+    public Message insertMessage(Message message) {
+        lock.writeLock().lock();
+        try {
+            return insert(message);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> insertMessages(List<Message> messages) {
+        List<Message> insertedMessages = new ArrayList<>(messages.size());
+        lock.writeLock().lock();
+        try {
+            for (Message message : messages) insertedMessages.add(insert(message));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return insertedMessages;
+    }
+
+    private Message insert(Message message) {
+        byte[] text = encode(message.getMessage_text());
+        if (text == null) return null;
+        int message_id = lastMessageId + 1;
+        int row = message_id - 1;
+        if ((row >>> rowChunkBits) == rows.size()) rows.add(new RowChunk(1 << rowChunkBits));
+        long address = appendText(message_id, text);
+        RowChunk chunk = rows.get(row >>> rowChunkBits);
+        int index = row & rowChunkMask;
+        chunk.messageIds.putInt(index * 4, message_id);
+        chunk.postedBy.putInt(index * 4, message.getPosted_by());
+        chunk.times.putLong(index * 8, message.getTime_posted_epoch());
+        chunk.textAddresses.putLong(index * 8, address);
+        chunk.textLengths.putInt(index * 4, text.length);
+        lastMessageId = message_id;
+        liveMessages++;
+        messagesByAccount.add(message.getPosted_by(), message.getTime_posted_epoch(), message_id);
+        return new Message(message_id, message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
+    }
+
+    @Override
+    public List<Message> getMessagesAfterId(int after_id, int limit) {
+        lock.readLock().lock();
+        try {
+            return page(after_id, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message getMessageById(int input_message_id) {
+        lock.readLock().lock();
+        try {
+            return read(input_message_id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Message deleteMessageById(int input_message_id) {
+        lock.writeLock().lock();
+        try {
+            Message deleted = read(input_message_id);
+            if (deleted == null) return null;
+            int row = input_message_id - 1;
+            RowChunk chunk = rows.get(row >>> rowChunkBits);
+            int index = row & rowChunkMask;
+            release(chunk.textAddresses.getLong(index * 8), chunk.textLengths.getInt(index * 4));
+            chunk.messageIds.putInt(index * 4, 0);
+            liveMessages--;
+            messagesByAccount.remove(deleted.getPosted_by(), deleted.getTime_posted_epoch(), input_message_id);
+            return deleted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Message updateMessageById(int input_message_id, String message_text) {
+        lock.writeLock().lock();
+        try {
+            Message existing = read(input_message_id);
+            byte[] text = encode(message_text);
+            if (existing == null || text == null) return null;
+            int row = input_message_id - 1;
+            RowChunk chunk = rows.get(row >>> rowChunkBits);
+            int index = row & rowChunkMask;
+            release(chunk.textAddresses.getLong(index * 8), chunk.textLengths.getInt(index * 4));
+            chunk.textAddresses.putLong(index * 8, appendText(input_message_id, text));
+            chunk.textLengths.putInt(index * 4, text.length);
+            return existing;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getMessagesFromAccountIdAfterId(int input_account_id, int after_id, int limit) {
+        lock.readLock().lock();
+        try {
+            SortedIntList accountIds = messagesByAccount.ids(input_account_id);
+            return accountIds == null ? new ArrayList<>() : page(accountIds, after_id, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Message> getLatestMessagesFromAccountIdBefore(int input_account_id, long before, int after_id,
+            int limit) {
+        List<Message> messages = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            messagesByAccount.latest(input_account_id, before, after_id, limit,
+                    message_id -> messages.add(read(message_id)));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return messages;
+    }
+
+    @Override
+    public int streamMessages(Integer input_account_id, int after_id, int limit, Consumer<Message> consumer) {
+        int count = 0;
+        int cursor = after_id;
+        while (count < limit) {
+            List<Message> chunk;
+            lock.readLock().lock();
+            try {
+                int chunkLimit = Math.min(STREAM_CHUNK_SIZE, limit - count);
+                if (input_account_id == null) {
+                    chunk = page(cursor, chunkLimit);
+                } else {
+                    SortedIntList accountIds = messagesByAccount.ids(input_account_id.intValue());
+                    if (accountIds == null) break;
+                    chunk = page(accountIds, cursor, chunkLimit);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (chunk.isEmpty()) break;
+            for (Message message : chunk) consumer.accept(message);
+            count += chunk.size();
+            cursor = chunk.get(chunk.size() - 1).getMessage_id();
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return true;
+    }
+
+    /**
+     * Stop background compaction. The memory itself is released once the store is no longer referenced.
+     */
+    @Override
+    public void close() {
+        if (compactor != null) compactor.shutdownNow();
+    }
+
+    /**
+     * @return how many messages are stored
+     */
+    public int getMessageCount() {
+        lock.readLock().lock();
+        try {
+            return liveMessages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the direct memory held by the message text arena, in bytes, recycled chunks included
+     */
+    public long getArenaCapacityBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) arena.size() * arenaChunkBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the bytes of the arena taken by the current text of a message, entry headers included
+     */
+    public long getArenaLiveBytes() {
+        lock.readLock().lock();
+        try {
+            long live = 0;
+            for (ArenaChunk chunk : arena) live += chunk.liveBytes;
+            return live;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many arena chunks compaction has emptied and recycled
+     */
+    public long getCompactedChunkCount() {
+        lock.readLock().lock();
+        try {
+            return compactedChunks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the text as UTF-8, or null if it is missing or too long for an arena entry
+     */
+    private byte[] encode(String message_text) {
+        if (message_text == null) return null;
+        byte[] text = message_text.getBytes(StandardCharsets.UTF_8);
+        return text.length <= Short.MAX_VALUE && ENTRY_HEADER_BYTES + text.length <= arenaChunkBytes ? text : null;
+    }
+
+    /**
+     * @return the message in a row, or null if there is no such message
+     */
+    private Message read(int message_id) {
+        if (message_id < 1 || message_id > lastMessageId) return null;
+        int row = message_id - 1;
+        RowChunk chunk = rows.get(row >>> rowChunkBits);
+        int index = row & rowChunkMask;
+        if (chunk.messageIds.getInt(index * 4) == 0) return null;
+        return new Message(message_id, chunk.postedBy.getInt(index * 4),
+                readText(chunk.textAddresses.getLong(index * 8), chunk.textLengths.getInt(index * 4)),
+                chunk.times.getLong(index * 8));
+    }
+
+    private String readText(long address, int length) {
+        return new String(readBytes(address, length), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readBytes(long address, int length) {
+        ByteBuffer buffer = arena.get((int) (address >>> 32)).buffer;
+        int offset = (int) address + ENTRY_HEADER_BYTES;
+        byte[] text = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(text, 0, length);
+        return text;
+    }
+
+    /**
+     * @return up to limit messages with a message id greater than after_id, in ascending message id order
+     */
+    private List<Message> page(int after_id, int limit) {
+        List<Message> messages = new ArrayList<>(Math.min(limit, 64));
+        for (int message_id = Math.max(after_id, 0) + 1; message_id <= lastMessageId; message_id++) {
+            Message message = read(message_id);
+            if (message == null) continue;
+            messages.add(message);
+            if (messages.size() == limit) break;
+        }
+        return messages;
+    }
+
+    /**
+     * @return up to limit messages whose ids come after after_id in ids, in ascending message id order
+     */
+    private List<Message> page(SortedIntList ids, int after_id, int limit) {
+        int from = ids.indexAfter(after_id);
+        int to = (int) Math.min((long) from + limit, ids.size());
+        List<Message> messages = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) messages.add(read(ids.get(i)));
+        return messages;
+    }
+
+    /**
+     * Append a text to the arena. Called with the write lock held.
+     *
+     * @return the address of its entry: the arena chunk in the high 32 bits and the offset in the low 32
+     */
+    private long appendText(int message_id, byte[] text) {
+        int entryBytes = ENTRY_HEADER_BYTES + text.length;
+        if (appendChunk == null || appendChunk.used + entryBytes > arenaChunkBytes) {
+            appendChunk = freeArenaChunks.pollFirst();
+            if (appendChunk == null) {
+                appendChunk = new ArenaChunk(arena.size(), arenaChunkBytes);
+                arena.add(appendChunk);
+            }
+        }
+        ArenaChunk chunk = appendChunk;
+        int offset = chunk.used;
+        chunk.buffer.putInt(offset, message_id);
+        chunk.buffer.putShort(offset + 4, (short) text.length);
+        chunk.writer.position(offset + ENTRY_HEADER_BYTES);
+        chunk.writer.put(text);
+        chunk.used += entryBytes;
+        chunk.liveBytes += entryBytes;
+        return (long) chunk.index << 32 | offset;
+    }
+
+    /**
+     * Mark a text entry dead. Called with the write lock held.
+     */
+    private void release(long address, int length) {
+        arena.get((int) (address >>> 32)).liveBytes -= ENTRY_HEADER_BYTES + length;
+    }
+
+    /**
+     * Compact every full arena chunk that is mostly dead entries.
+     */
+    void compact() {
+        List<ArenaChunk> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (ArenaChunk chunk : arena) {
+                if (chunk == appendChunk || chunk.used == 0) continue;
+                if (chunk.liveBytes < chunk.used * compactBelowLiveRatio) candidates.add(chunk);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (ArenaChunk chunk : candidates) compact(chunk);
+    }
+
+    /**
+     * Move the live entries out of a chunk, a step at a time, then recycle it. Appends never go to a chunk that is
+     * not the append chunk, so the entries of the chunk being compacted only ever die while it is walked.
+     */
+    private void compact(ArenaChunk chunk) {
+        int offset = 0;
+        while (true) {
+            lock.writeLock().lock();
+            try {
+                for (int step = 0; step < COMPACTION_STEP && offset < chunk.used; step++) {
+                    int message_id = chunk.buffer.getInt(offset);
+                    int length = chunk.buffer.getShort(offset + 4);
+                    long address = (long) chunk.index << 32 | offset;
+                    offset += ENTRY_HEADER_BYTES + length;
+                    if (message_id < 1 || message_id > lastMessageId) continue;
+                    int row = message_id - 1;
+                    RowChunk rowChunk = rows.get(row >>> rowChunkBits);
+                    int index = row & rowChunkMask;
+                    if (rowChunk.messageIds.getInt(index * 4) == 0) continue;
+                    if (rowChunk.textAddresses.getLong(index * 8) != address) continue;
+
+                    byte[] text = readBytes(address, length);
+                    chunk.liveBytes -= ENTRY_HEADER_BYTES + length;
+                    rowChunk.textAddresses.putLong(index * 8, appendText(message_id, text));
+                }
+                if (offset >= chunk.used) {
+                    chunk.used = 0;
+                    chunk.liveBytes = 0;
+                    freeArenaChunks.addLast(chunk);
+                    compactedChunks++;
+                    return;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * The columns of rowsPerChunk rows, each a direct buffer.
+     */
+    private static final class RowChunk {
+        final ByteBuffer messageIds;
+        final ByteBuffer postedBy;
+        final ByteBuffer times;
+        final ByteBuffer textAddresses;
+        final ByteBuffer textLengths;
+
+        RowChunk(int rows) {
+            messageIds = ByteBuffer.allocateDirect(rows * 4);
+            postedBy = ByteBuffer.allocateDirect(rows * 4);
+            times = ByteBuffer.allocateDirect(rows * 8);
+            textAddresses = ByteBuffer.allocateDirect(rows * 8);
+            textLengths = ByteBuffer.allocateDirect(rows * 4);
+        }
+    }
+
+    /**
+     * One direct buffer of the text arena. Entries are appended at used; liveBytes counts those still referenced.
+     */
+    private static final class ArenaChunk {
+        final int index;
+        final ByteBuffer buffer;
+        /**
+         * A view of buffer for relative bulk puts, only used with the write lock held.
+         */
+        final ByteBuffer writer;
+        int used;
+        long liveBytes;
+
+        ArenaChunk(int index, int bytes) {
+            this.index = index;
+            this.buffer = ByteBuffer.allocateDirect(bytes);
+            this.writer = buffer.duplicate();
+        }
+    }
+}
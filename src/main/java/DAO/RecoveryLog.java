@@ -0,0 +1,678 @@
+package DAO;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import Model.Account;
+import Model.Message;
+
+/**
+ * Makes an InMemoryAccountStore and an InMemoryMessageStore survive a restart, with periodic snapshots of both and a
+ * write-ahead log of the changes made since the latest snapshot. DurableAccountStore and DurableMessageStore send
+ * their changes through here.
+ *
+ * Each change is applied to the in-memory store and then appended to the log as one record: its type, the length of
+ * its payload, the payload and a CRC32. Changes are serialized by one lock, so the log holds them in the order they
+ * were made. A change whose record cannot be written is taken back out of the store and reported as failed.
+ *
+ * The files are numbered by generation: snapshot-N holds the state as it was when wal-N was started. Taking a
+ * snapshot starts the next log and copies out the stores under the lock, which takes as long as copying a list of
+ * references, then writes the copy without it, to a temporary file that is renamed into place once forced to disk.
+ * Only then are older snapshots and logs deleted, so a crash at any point leaves a snapshot and the logs that follow
+ * it. A snapshot is taken every snapshotIntervalMillis once there are changes, as soon as the log reaches
+ * snapshotWalBytes, and when the store is closed.
+ *
+ * Recovery loads the newest snapshot and replays the logs from its generation on. The snapshot is one sequential read
+ * of a compact binary file, and the replay is bounded by snapshotWalBytes rather than by the amount of data. Replay
+ * stops at the first record whose checksum does not match, which is where a crash cut the last write short, and the
+ * log is cut back to the last whole record before appending to it again. How long recovery took is printed at boot.
+ */
+final class RecoveryLog {
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final String WAL_PREFIX = "wal-";
+    private static final String WAL_SUFFIX = ".log";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final String LOCK_FILE = "lock";
+    private static final int SNAPSHOT_MAGIC = 0x534e4150;
+    private static final int SNAPSHOT_VERSION = 1;
+    /**
+     * Bytes around the payload of a log record: type, payload length and CRC32.
+     */
+    private static final int RECORD_FRAME_BYTES = 9;
+    /**
+     * The largest payload a log record may have. A longer length can only come from a torn write.
+     */
+    private static final int MAX_PAYLOAD_BYTES = 1 << 20;
+
+    private static final byte ACCOUNT_INSERTED = 1;
+    private static final byte MESSAGE_INSERTED = 2;
+    private static final byte MESSAGE_UPDATED = 3;
+    private static final byte MESSAGE_DELETED = 4;
+
+    private final Path directory;
+    private final InMemoryAccountStore accounts;
+    private final InMemoryMessageStore messages;
+    private final FsyncPolicy fsyncPolicy;
+    private final long snapshotIntervalNanos;
+    private final long snapshotWalBytes;
+
+    /**
+     * Held while a change is applied and logged, and while the log is switched for a snapshot.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Held while a snapshot is taken, so only one is taken at a time.
+     */
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private final DataOutputStream payloadOut = new DataOutputStream(payload);
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final CRC32 checksum = new CRC32();
+    private final ScheduledExecutorService background;
+    /**
+     * Held on the lock file for as long as the log is open, so no other process or store writes the same files.
+     */
+    private final FileLock directoryLock;
+    private int pendingRecords;
+    private FileChannel wal;
+    private long generation;
+    private long walBytes;
+    private long walRecords;
+    private boolean unflushed;
+    private boolean closed;
+    private volatile long lastSnapshotNanos = System.nanoTime();
+
+    /**
+     * Recover the stores from the files in a directory.
+     *
+     * @param directory where snapshots and logs are kept, created if missing
+     * @param accounts an empty store, filled in by recovery
+     * @param messages an empty store, filled in by recovery
+     * @param fsyncPolicy when appended changes are forced to disk
+     * @param fsyncIntervalMillis how often they are forced under FsyncPolicy.INTERVAL
+     * @param snapshotIntervalMillis how often a snapshot is taken if anything changed, 0 to only take one by size
+     * @param snapshotWalBytes the log size at which a snapshot is taken
+     * @throws IOException if a snapshot or a log could not be read, the log could not be opened for writing, or the
+     * directory is in use by another RecoveryLog
+     */
+    RecoveryLog(Path directory, InMemoryAccountStore accounts, InMemoryMessageStore messages, FsyncPolicy fsyncPolicy,
+            long fsyncIntervalMillis, long snapshotIntervalMillis, long snapshotWalBytes) throws IOException {
+        this.directory = directory;
+        this.accounts = accounts;
+        this.messages = messages;
+        this.fsyncPolicy = fsyncPolicy;
+        this.snapshotIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, snapshotIntervalMillis));
+        this.snapshotWalBytes = Math.max(1, snapshotWalBytes);
+        Files.createDirectories(directory);
+        directoryLock = lockDirectory(directory);
+        try {
+            recover();
+        } catch (IOException e) {
+            directoryLock.channel().close();
+            throw e;
+        }
+
+        background = Executors.newScheduledThreadPool(fsyncPolicy == FsyncPolicy.INTERVAL ? 2 : 1, runnable -> {
+            Thread thread = new Thread(runnable, "storage-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkMillis = snapshotIntervalMillis > 0 ? Math.min(1000, snapshotIntervalMillis) : 1000;
+        background.scheduleWithFixedDelay(this::snapshotIfDue, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            long interval = Math.max(1, fsyncIntervalMillis);
+            background.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    Account insertAccount(Account account) {
+        lock.lock();
+        try {
+            Account inserted = accounts.insertAccount(account);
+            if (inserted == null) return null;
+            try {
+                begin();
+                payloadOut.writeInt(inserted.getAccount_id());
+                payloadOut.writeUTF(inserted.getUsername());
+                payloadOut.writeUTF(inserted.getPassword());
+                record(ACCOUNT_INSERTED);
+                commit();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                accounts.remove(inserted);
+                return null;
+            }
+            return inserted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Message insertMessage(Message message) {
+        lock.lock();
+        try {
+            Message inserted = messages.insertMessage(message);
+            if (inserted == null) return null;
+            try {
+                begin();
+                recordInsert(inserted);
+                commit();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                messages.deleteMessageById(inserted.getMessage_id());
+                return null;
+            }
+            return inserted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Insert and log a batch, forcing the log once for all of it.
+     */
+    List<Message> insertMessages(List<Message> batch) {
+        lock.lock();
+        try {
+            List<Message> insertedMessages = messages.insertMessages(batch);
+            if (insertedMessages == null) return null;
+            try {
+                begin();
+                for (Message inserted : insertedMessages) {
+                    if (inserted != null) recordInsert(inserted);
+                }
+                commit();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                for (Message inserted : insertedMessages) {
+                    if (inserted != null) messages.deleteMessageById(inserted.getMessage_id());
+                }
+                return null;
+            }
+            return insertedMessages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Message updateMessage(int message_id, String message_text) {
+        lock.lock();
+        try {
+            if (message_text == null) return null;
+            Message existing = messages.updateMessageById(message_id, message_text);
+            if (existing == null) return null;
+            try {
+                begin();
+                payloadOut.writeInt(message_id);
+                payloadOut.writeUTF(message_text);
+                record(MESSAGE_UPDATED);
+                commit();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                messages.restore(existing);
+                return null;
+            }
+            return existing;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    Message deleteMessage(int message_id) {
+        lock.lock();
+        try {
+            Message deleted = messages.deleteMessageById(message_id);
+            if (deleted == null) return null;
+            try {
+                begin();
+                payloadOut.writeInt(message_id);
+                record(MESSAGE_DELETED);
+                commit();
+            } catch (IOException e) {
+                System.out.println(e.getMessage());
+                messages.restore(deleted);
+                return null;
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take a last snapshot, so the next start has no log to replay, then close the log. Nothing is changed through
+     * this log afterwards.
+     */
+    void close() {
+        // Not shutdownNow: interrupting a thread inside a FileChannel call closes the channel
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshot();
+        lock.lock();
+        try {
+            closed = true;
+            wal.force(false);
+            wal.close();
+            directoryLock.channel().close();
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordInsert(Message inserted) throws IOException {
+        payloadOut.writeInt(inserted.getMessage_id());
+        payloadOut.writeInt(inserted.getPosted_by());
+        payloadOut.writeLong(inserted.getTime_posted_epoch());
+        payloadOut.writeUTF(inserted.getMessage_text());
+        record(MESSAGE_INSERTED);
+    }
+
+    /**
+     * Drop anything left in the record buffers by a change that failed before it was committed.
+     */
+    private void begin() {
+        payload.reset();
+        pending.reset();
+        pendingRecords = 0;
+    }
+
+    /**
+     * Frame the payload written since the last record as a record of a type, to be written by the next commit.
+     */
+    private void record(byte type) throws IOException {
+        byte[] bytes = payload.toByteArray();
+        payload.reset();
+        pendingOut.writeByte(type);
+        pendingOut.writeInt(bytes.length);
+        pendingOut.write(bytes);
+        pendingOut.writeInt(checksum(checksum, type, bytes));
+        pendingRecords++;
+    }
+
+    /**
+     * @return the CRC32 of a record's type, payload length and payload
+     */
+    private static int checksum(CRC32 checksum, int type, byte[] bytes) {
+        checksum.reset();
+        checksum.update(type);
+        checksum.update(ByteBuffer.allocate(4).putInt(0, bytes.length));
+        checksum.update(bytes);
+        return (int) checksum.getValue();
+    }
+
+    /**
+     * Write the records built since the last commit in one write, and force them to disk under FsyncPolicy.ALWAYS.
+     * If the write fails the log is cut back to where it was.
+     */
+    private void commit() throws IOException {
+        if (closed) throw new IOException("The write-ahead log is closed");
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        long records = pendingRecords;
+        begin();
+        long position = walBytes;
+        try {
+            while (buffer.hasRemaining()) wal.write(buffer);
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) wal.force(false);
+        } catch (IOException e) {
+            try {
+                wal.truncate(position);
+                wal.position(position);
+            } catch (IOException truncateFailure) {
+                System.out.println(truncateFailure.getMessage());
+            }
+            throw e;
+        }
+        walBytes = position + buffer.capacity();
+        walRecords += records;
+        unflushed = true;
+    }
+
+    /**
+     * Force the log if anything was appended since it was last forced. The forcing happens outside the lock, so
+     * changes are not held up by the disk.
+     */
+    private void flush() {
+        FileChannel flushing;
+        lock.lock();
+        try {
+            if (!unflushed || closed) return;
+            unflushed = false;
+            flushing = wal;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flushing.force(false);
+        } catch (ClosedChannelException e) {
+            // A snapshot switched logs meanwhile, and forced this one before closing it
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private void snapshotIfDue() {
+        boolean due;
+        lock.lock();
+        try {
+            due = walRecords > 0 && (walBytes >= snapshotWalBytes
+                    || (snapshotIntervalNanos > 0 && System.nanoTime() - lastSnapshotNanos >= snapshotIntervalNanos));
+        } finally {
+            lock.unlock();
+        }
+        if (due) snapshot();
+    }
+
+    /**
+     * Start the next log and write a snapshot of the stores as they were when it started.
+     */
+    void snapshot() {
+        snapshotLock.lock();
+        try {
+            List<Account> accountList;
+            List<Message> messageList;
+            int lastAccountId;
+            int lastMessageId;
+            long snapshotGeneration;
+            lock.lock();
+            try {
+                if (closed) return;
+                accountList = accounts.getAllAccounts();
+                messageList = messages.getMessagesAfterId(0, Integer.MAX_VALUE);
+                lastAccountId = accounts.getLastAccountId();
+                lastMessageId = messages.getLastMessageId();
+                switchLog(generation + 1);
+                snapshotGeneration = generation;
+            } finally {
+                lock.unlock();
+            }
+            accountList.sort(Comparator.comparingInt(Account::getAccount_id));
+
+            long start = System.nanoTime();
+            Path snapshot = file(SNAPSHOT_PREFIX, snapshotGeneration, SNAPSHOT_SUFFIX);
+            Path temporary = file(SNAPSHOT_PREFIX, snapshotGeneration, TEMPORARY_SUFFIX);
+            writeSnapshot(temporary, accountList, messageList, lastAccountId, lastMessageId);
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+            for (long older : generations(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (older < snapshotGeneration) Files.deleteIfExists(file(SNAPSHOT_PREFIX, older, SNAPSHOT_SUFFIX));
+            }
+            for (long older : generations(WAL_PREFIX, WAL_SUFFIX)) {
+                if (older < snapshotGeneration) Files.deleteIfExists(file(WAL_PREFIX, older, WAL_SUFFIX));
+            }
+            lastSnapshotNanos = System.nanoTime();
+            System.out.println("Wrote snapshot " + snapshotGeneration + " of " + accountList.size() + " accounts and "
+                    + messageList.size() + " messages in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Force and close the current log and append to a new one from now on. Called with the lock held; if the new log
+     * cannot be created the current one stays in use.
+     */
+    private void switchLog(long nextGeneration) throws IOException {
+        FileChannel next = FileChannel.open(file(WAL_PREFIX, nextGeneration, WAL_SUFFIX), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        if (wal != null) {
+            wal.force(false);
+            wal.close();
+        }
+        wal = next;
+        generation = nextGeneration;
+        walBytes = 0;
+        walRecords = 0;
+        unflushed = false;
+    }
+
+    private static void writeSnapshot(Path path, List<Account> accountList, List<Message> messageList,
+            int lastAccountId, int lastMessageId) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(uncloseable(channel), 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(lastAccountId);
+            out.writeInt(accountList.size());
+            for (Account account : accountList) {
+                out.writeInt(account.getAccount_id());
+                out.writeUTF(account.getUsername());
+                out.writeUTF(account.getPassword());
+            }
+            out.writeInt(lastMessageId);
+            out.writeInt(messageList.size());
+            for (Message message : messageList) {
+                out.writeInt(message.getMessage_id());
+                out.writeInt(message.getPosted_by());
+                out.writeLong(message.getTime_posted_epoch());
+                out.writeUTF(message.getMessage_text());
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            channel.force(false);
+        }
+    }
+
+    private static OutputStream uncloseable(FileChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+        };
+    }
+
+    private static FileLock lockDirectory(Path directory) throws IOException {
+        FileChannel channel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock fileLock;
+        try {
+            fileLock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            channel.close();
+            throw new IOException(directory + " is in use by another write-ahead log");
+        }
+        return fileLock;
+    }
+
+    /**
+     * Load the newest snapshot, replay the logs that follow it and open the last of them for appending.
+     */
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        try (DirectoryStream<Path> leftovers = Files.newDirectoryStream(directory, "*" + TEMPORARY_SUFFIX)) {
+            for (Path leftover : leftovers) Files.deleteIfExists(leftover);
+        }
+
+        List<Long> snapshots = generations(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        long snapshotGeneration = snapshots.isEmpty() ? 1 : snapshots.get(snapshots.size() - 1);
+        if (!snapshots.isEmpty()) loadSnapshot(file(SNAPSHOT_PREFIX, snapshotGeneration, SNAPSHOT_SUFFIX));
+        long loaded = System.nanoTime();
+
+        long replayed = 0;
+        long lastGeneration = snapshotGeneration;
+        long validBytes = 0;
+        long lastRecords = 0;
+        for (long walGeneration : generations(WAL_PREFIX, WAL_SUFFIX)) {
+            if (walGeneration < snapshotGeneration) continue;
+            long[] replay = replay(file(WAL_PREFIX, walGeneration, WAL_SUFFIX));
+            replayed += replay[1];
+            lastGeneration = walGeneration;
+            validBytes = replay[0];
+            lastRecords = replay[1];
+        }
+
+        wal = FileChannel.open(file(WAL_PREFIX, lastGeneration, WAL_SUFFIX), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        wal.truncate(validBytes);
+        wal.position(validBytes);
+        generation = lastGeneration;
+        walBytes = validBytes;
+        walRecords = lastRecords;
+
+        long end = System.nanoTime();
+        System.out.println("Recovered " + accounts.count() + " accounts and " + messages.count() + " messages in "
+                + TimeUnit.NANOSECONDS.toMillis(end - start) + "ms: "
+                + (snapshots.isEmpty() ? "no snapshot" : "loaded snapshot " + snapshotGeneration + " in "
+                        + TimeUnit.NANOSECONDS.toMillis(loaded - start) + "ms")
+                + ", replayed " + replayed + " write-ahead log records in "
+                + TimeUnit.NANOSECONDS.toMillis(end - loaded) + "ms");
+    }
+
+    /**
+     * @throws IOException if the snapshot cannot be read or its checksum does not match. A snapshot is only renamed
+     * into place once it is complete, so this is damage rather than a crash, and recovery stops rather than carry on
+     * without it
+     */
+    private void loadSnapshot(Path path) throws IOException {
+        try (InputStream file = Files.newInputStream(path)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(file, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException(path + " is not a snapshot this version can read");
+            }
+            accounts.restoreLastAccountId(in.readInt());
+            for (int i = in.readInt(); i > 0; i--) {
+                accounts.restore(new Account(in.readInt(), in.readUTF(), in.readUTF()));
+            }
+            messages.restoreLastMessageId(in.readInt());
+            for (int i = in.readInt(); i > 0; i--) messages.restore(readMessage(in));
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) throw new IOException(path + " is corrupt: its checksum does not match");
+        }
+    }
+
+    /**
+     * Apply the records of a log to the stores, up to the first one that is incomplete or fails its checksum.
+     *
+     * @return the length of the log up to the end of the last whole record, and the number of records applied
+     */
+    private long[] replay(Path path) throws IOException {
+        long offset = 0;
+        long records = 0;
+        CRC32 recordChecksum = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            while (true) {
+                int type = in.read();
+                if (type == -1) break;
+                int length = in.readInt();
+                if (length < 0 || length > MAX_PAYLOAD_BYTES) throw new EOFException();
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                int expected = in.readInt();
+                if (checksum(recordChecksum, type, bytes) != expected) throw new EOFException();
+                apply((byte) type, bytes);
+                offset += RECORD_FRAME_BYTES + length;
+                records++;
+            }
+        } catch (EOFException e) {
+            System.out.println("Write-ahead log " + path + " has a torn or corrupt record at offset " + offset
+                    + ", discarding the rest of it");
+        }
+        return new long[] {offset, records};
+    }
+
+    private void apply(byte type, byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        switch (type) {
+            case ACCOUNT_INSERTED:
+                accounts.restore(new Account(in.readInt(), in.readUTF(), in.readUTF()));
+                break;
+            case MESSAGE_INSERTED:
+                messages.restore(readMessage(in));
+                break;
+            case MESSAGE_UPDATED:
+                messages.updateMessageById(in.readInt(), in.readUTF());
+                break;
+            case MESSAGE_DELETED:
+                messages.deleteMessageById(in.readInt());
+                break;
+            default:
+                throw new EOFException();
+        }
+    }
+
+    /**
+     * Read a message written as its message_id, posted_by, time_posted_epoch and text.
+     */
+    private static Message readMessage(DataInputStream in) throws IOException {
+        int message_id = in.readInt();
+        int posted_by = in.readInt();
+        long time_posted_epoch = in.readLong();
+        return new Message(message_id, posted_by, in.readUTF(), time_posted_epoch);
+    }
+
+    private Path file(String prefix, long fileGeneration, String suffix) {
+        return directory.resolve(prefix + String.format("%010d", fileGeneration) + suffix);
+    }
+
+    /**
+     * @return the generations of the files with a prefix and suffix, in ascending order
+     */
+    private List<Long> generations(String prefix, String suffix) throws IOException {
+        List<Long> fileGenerations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path path : files) {
+                String name = path.getFileName().toString();
+                try {
+                    fileGenerations.add(Long.parseLong(name.substring(prefix.length(),
+                            name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    System.out.println("Ignoring " + path + ": not a generation number");
+                }
+            }
+        }
+        fileGenerations.sort(null);
+        return fileGenerations;
+    }
+}
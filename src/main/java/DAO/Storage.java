@@ -0,0 +1,28 @@
+package DAO;
+
+/**
+ * The account and message stores a StorageEngine opens, which an app is built on.
+ */
+public final class Storage {
+    private final AccountStore accountStore;
+    private final MessageStore messageStore;
+
+    public Storage(AccountStore accountStore, MessageStore messageStore) {
+        this.accountStore = accountStore;
+        this.messageStore = messageStore;
+    }
+
+    /**
+     * @return where accounts are kept
+     */
+    public AccountStore getAccountStore() {
+        return accountStore;
+    }
+
+    /**
+     * @return where messages are kept. Closing it closes the storage
+     */
+    public MessageStore getMessageStore() {
+        return messageStore;
+    }
+}
@@ -0,0 +1,110 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * The stores messages and accounts can be kept in. SocialMediaController.startAPI picks one, by default from the
+ * storage.engine system property.
+ */
+public enum StorageEngine {
+    /**
+     * The H2 database behind ConnectionUtil, through MessageDAO and AccountDAO.
+     */
+    H2 {
+        @Override
+        public Storage open() {
+            return new Storage(new AccountDAO(), new MessageDAO());
+        }
+    },
+    /**
+     * Heap-only stores that start empty and are lost on restart, through InMemoryMessageStore and InMemoryAccountStore.
+     */
+    MEMORY {
+        @Override
+        public Storage open() {
+            return new Storage(new InMemoryAccountStore(), new InMemoryMessageStore());
+        }
+    },
+    /**
+     * Like MEMORY, but messages are kept in direct memory by OffHeapMessageStore, sized with the
+     * messages.offHeap.rowsPerChunk, messages.offHeap.arenaChunkBytes, messages.offHeap.compactBelowLiveRatio and
+     * messages.offHeap.compactionIntervalMillis system properties.
+     */
+    OFF_HEAP {
+        @Override
+        public Storage open() {
+            return new Storage(new InMemoryAccountStore(), new OffHeapMessageStore(
+                    Integer.getInteger("messages.offHeap.rowsPerChunk", 65536),
+                    Integer.getInteger("messages.offHeap.arenaChunkBytes", 4 << 20),
+                    Double.parseDouble(System.getProperty("messages.offHeap.compactBelowLiveRatio", "0.5")),
+                    Long.getLong("messages.offHeap.compactionIntervalMillis", 1000)));
+        }
+    },
+    /**
+     * Accounts in H2 through AccountDAO, and messages in the memory-mapped log of LogMessageStore, which is kept in
+     * the messages.log.dir directory (./messages-log) and set up with the messages.log.segmentBytes,
+     * messages.log.fsync and messages.log.fsyncIntervalMillis system properties.
+     */
+    LOG {
+        /**
+         * @throws UncheckedIOException if the log could not be opened
+         */
+        @Override
+        public Storage open() {
+            try {
+                return new Storage(new AccountDAO(), new LogMessageStore(
+                        Paths.get(System.getProperty("messages.log.dir", "./messages-log")),
+                        Integer.getInteger("messages.log.segmentBytes", 64 << 20),
+                        FsyncPolicy.fromName(System.getProperty("messages.log.fsync", "interval")),
+                        Long.getLong("messages.log.fsyncIntervalMillis", 1000)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    },
+    /**
+     * Like MEMORY, but accounts and messages survive a restart: through RecoveryLog, every change is written to a
+     * write-ahead log and both stores are snapshotted periodically. The files are kept in the storage.snapshot.dir
+     * directory (./snapshots); the storage.snapshot.intervalMillis, storage.snapshot.walBytes, storage.wal.fsync and
+     * storage.wal.fsyncIntervalMillis system properties set how often snapshots are taken and the log is forced.
+     */
+    SNAPSHOT {
+        /**
+         * @throws UncheckedIOException if the snapshot or the log could not be read
+         */
+        @Override
+        public Storage open() {
+            try {
+                InMemoryAccountStore accounts = new InMemoryAccountStore();
+                InMemoryMessageStore messages = new InMemoryMessageStore();
+                RecoveryLog recoveryLog = new RecoveryLog(
+                        Paths.get(System.getProperty("storage.snapshot.dir", "./snapshots")), accounts, messages,
+                        FsyncPolicy.fromName(System.getProperty("storage.wal.fsync", "interval")),
+                        Long.getLong("storage.wal.fsyncIntervalMillis", 1000),
+                        Long.getLong("storage.snapshot.intervalMillis", 60000),
+                        Long.getLong("storage.snapshot.walBytes", 16 << 20));
+                return new Storage(new DurableAccountStore(accounts, recoveryLog),
+                        new DurableMessageStore(messages, recoveryLog));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    };
+
+    /**
+     * @return the stores for accounts and messages. Every call to MEMORY or OFF_HEAP returns new, empty stores; LOG
+     * and SNAPSHOT re-open their files
+     */
+    public abstract Storage open();
+
+    /**
+     * @param name an engine name, in any case, e.g. "h2", "memory", "off_heap", "log" or "snapshot"
+     * @throws IllegalArgumentException if there is no engine with that name
+     */
+    public static StorageEngine fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT));
+    }
+}
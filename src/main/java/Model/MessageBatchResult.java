@@ -0,0 +1,51 @@
+package Model;
+
+/**
+ * This is a class that models the outcome of one message in a batch creation request.
+ */
+public class MessageBatchResult {
+    /**
+     * The position of the message in the request array.
+     */
+    private final int index;
+    /**
+     * The status the message would have got from POST /messages: 200 if it was created, 400 if it was not valid.
+     */
+    private final int status;
+    /**
+     * The created message, including its message_id, or null if it was not created.
+     */
+    private final Message message;
+
+    /**
+     * @param index the position of the message in the request array
+     * @param status 200 if the message was created, 400 otherwise
+     * @param message the created message, or null
+     */
+    public MessageBatchResult(int index, int status, Message message) {
+        this.index = index;
+        this.status = status;
+        this.message = message;
+    }
+
+    /**
+     * @return the position of the message in the request array
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return 200 if the message was created, 400 otherwise
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the created message, or null if it was not created
+     */
+    public Message getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,62 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of a message listing, along with the cursor to request the next page with.
+ * Listings in message_id order only need after_id; listings ordered newest first also need before.
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, in the order of the listing.
+     */
+    private final List<Message> messages;
+    /**
+     * The message_id to pass as after_id to get the next page, or null if this is the last page.
+     */
+    private final Integer nextCursor;
+    /**
+     * For listings ordered newest first, the time_posted_epoch to pass as before to get the next page, or null.
+     */
+    private final Long nextBefore;
+
+    /**
+     * @param messages the messages on this page
+     * @param nextCursor the after_id of the next page, or null if there is none
+     */
+    public MessagePage(List<Message> messages, Integer nextCursor) {
+        this(messages, nextCursor, null);
+    }
+
+    /**
+     * @param messages the messages on this page
+     * @param nextCursor the after_id of the next page, or null if there is none
+     * @param nextBefore the before of the next page of a newest first listing, or null if there is none
+     */
+    public MessagePage(List<Message> messages, Integer nextCursor, Long nextBefore) {
+        this.messages = messages;
+        this.nextCursor = nextCursor;
+        this.nextBefore = nextBefore;
+    }
+
+    /**
+     * @return the messages on this page
+     */
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return the after_id of the next page, or null if this is the last page
+     */
+    public Integer getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return the before of the next page of a newest first listing, or null
+     */
+    public Long getNextBefore() {
+        return nextBefore;
+    }
+}
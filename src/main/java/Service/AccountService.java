@@ -1,19 +1,41 @@
 package Service;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import DAO.AccountDAO;
+import DAO.AccountStore;
 import Model.Account;
 
 /**
  * The purpose of the service class to to contain "business logic" betweent the web layer (controller) and persistence layer (DAO).
+ *
+ * Accounts are also kept in an in-memory index by username and by account_id. The index is loaded from the database
+ * when the service is created and kept up to date by addAccount, so logins and account existence checks never go to
+ * the database. This relies on accounts only being created through this service and never being deleted.
  */
 public class AccountService {
-    private AccountDAO accountDAO;
+    private AccountStore accountDAO;
+    private final ConcurrentMap<String, Account> accountsByUsername = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Account> accountsById = new ConcurrentHashMap<>();
 
     /**
-     * no-args constructor for creating a new AccountService with a new AccountDAO.
+     * no-args constructor for creating a new AccountService with a new AccountDAO. Loads every account into the index.
      */
     public AccountService() {
-        accountDAO = new AccountDAO();
+        this(new AccountDAO());
+    }
+
+    /**
+     * constructor for creating a new AccountService on an account store. Loads every account into the index.
+     *
+     * @param accountStore where accounts are kept, such as an AccountDAO
+     */
+    public AccountService(AccountStore accountStore) {
+        accountDAO = accountStore;
+        for (Account account : accountDAO.getAllAccounts()) {
+            index(account);
+        }
     }
 
     /**
@@ -27,22 +49,44 @@ public class AccountService {
          * Implement constraints here:
          * - username must not be blank
          * - password is at least 4 characters long
-         * - username must not already exist in database (this will be handled in the DAO)
+         * - username must not already exist in database (checked against the index, and enforced by the DAO)
         */
         if (account.getUsername() == "" || account.getUsername() == null) return null;
         if (account.getPassword().length() <= 4) return null;
+        if (accountsByUsername.containsKey(account.getUsername())) return null;
 
-        return accountDAO.insertAccount(account);
+        Account addedAccount = accountDAO.insertAccount(account);
+        if (addedAccount != null) index(addedAccount);
+        return addedAccount;
     }
 
     /**
-     * Use DAO to login
+     * Login against the account index
      * 
      * @param account an account object
      * @return the account if there is one with matching username and password. Null if does not pass username/password
      * requirements
      */
     public Account loginToAccount(Account account) {
-        return accountDAO.login(account);
+        if (account.getUsername() == null || account.getPassword() == null) return null;
+
+        Account existingAccount = accountsByUsername.get(account.getUsername());
+        if (existingAccount == null || !existingAccount.getPassword().equals(account.getPassword())) return null;
+        return existingAccount;
+    }
+
+    /**
+     * Check the account index for an account
+     * 
+     * @param account_id an account id, such as the posted_by of a message
+     * @return true if an account with that id exists
+     */
+    public boolean accountExists(int account_id) {
+        return accountsById.containsKey(account_id);
+    }
+
+    private void index(Account account) {
+        accountsByUsername.put(account.getUsername(), account);
+        accountsById.put(account.getAccount_id(), account);
     }
 }
@@ -0,0 +1,158 @@
+package Service;
+
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import DAO.MessageStore;
+import Model.Message;
+import Util.UncheckedSQLException;
+
+/**
+ * Collects message inserts from many callers and writes them in group commits.
+ *
+ * Callers put their message on a bounded queue and wait on a future. A single writer thread takes the first waiting
+ * message, then keeps draining the queue until it has maxBatchSize messages or maxLingerMillis have passed, and
+ * inserts the whole group with one MessageStore.insertMessages call, in one transaction on H2. Every caller's future is
+ * completed with its inserted message, including the generated message_id, once that transaction has committed.
+ *
+ * When the queue is full, submit waits up to submitTimeoutMillis for room and then gives up, which pushes back on
+ * callers instead of letting the backlog grow, without holding their threads indefinitely. An insert that is given up
+ * on, because the queue stayed full, the writer is closed or its group could not be written, completes exceptionally
+ * with an UncheckedSQLException caused by an SQLTransientException: nothing was written and the caller may try again
+ * later.
+ */
+class GroupCommitWriter {
+    private final MessageStore messageDAO;
+    private final int maxBatchSize;
+    private final long maxLingerNanos;
+    private final long submitTimeoutNanos;
+    private final BlockingQueue<PendingInsert> queue;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param messageDAO the store the groups are inserted into
+     * @param maxBatchSize the most messages written in one transaction
+     * @param maxLingerMillis how long the writer waits for more messages after the first one of a group arrives; 0
+     * writes whatever is queued right away, and the group for the next commit builds up while this one is written
+     * @param queueCapacity the most messages waiting to be written before submit has to wait for room
+     * @param submitTimeoutMillis how long submit waits for room in a full queue before giving up on the message
+     */
+    GroupCommitWriter(MessageStore messageDAO, int maxBatchSize, long maxLingerMillis, int queueCapacity,
+            long submitTimeoutMillis) {
+        this.messageDAO = messageDAO;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxLingerMillis));
+        this.submitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, submitTimeoutMillis));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.writer = new Thread(this::run, "message-group-commit");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue a validated message for the next group commit.
+     *
+     * @param message the message to insert
+     * @return a future completed with the inserted message once its group has committed, or with null if the store
+     * did not insert it, such as when its poster does not exist. Completed exceptionally if the queue stayed full for
+     * submitTimeoutMillis, the writer is closed or the group could not be written
+     */
+    CompletableFuture<Message> submit(Message message) {
+        PendingInsert pendingInsert = new PendingInsert(message);
+        if (closed) {
+            pendingInsert.fail("message writer is closed", null);
+            return pendingInsert.result;
+        }
+        try {
+            if (!queue.offer(pendingInsert, submitTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                pendingInsert.fail("message write queue is full", null);
+                return pendingInsert.result;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pendingInsert.fail("interrupted waiting for room in the message write queue", e);
+            return pendingInsert.result;
+        }
+        // If close() ran meanwhile the writer may already have stopped; whoever takes the insert back completes it
+        if (closed && queue.remove(pendingInsert)) pendingInsert.fail("message writer is closed", null);
+        return pendingInsert.result;
+    }
+
+    /**
+     * Stop the writer once it has written everything already queued. The writer is not interrupted, since an
+     * interrupt during a database write can close H2's file channel; it notices within its 100ms poll instead.
+     */
+    void close() {
+        closed = true;
+    }
+
+    private void run() {
+        List<PendingInsert> group = new ArrayList<>(maxBatchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                PendingInsert first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                group.add(first);
+
+                long deadline = System.nanoTime() + maxLingerNanos;
+                while (group.size() < maxBatchSize) {
+                    if (queue.drainTo(group, maxBatchSize - group.size()) > 0) continue;
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    PendingInsert next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    group.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Nothing interrupts the writer on purpose; write what has been collected and carry on
+                Thread.interrupted();
+            }
+            if (!group.isEmpty()) write(group);
+            group.clear();
+        }
+
+        // Complete anything a submit racing close() queued after the loop last looked
+        queue.drainTo(group);
+        for (PendingInsert pendingInsert : group) pendingInsert.fail("message writer is closed", null);
+    }
+
+    private void write(List<PendingInsert> group) {
+        List<Message> messages = new ArrayList<>(group.size());
+        for (PendingInsert pendingInsert : group) messages.add(pendingInsert.message);
+
+        List<Message> insertedMessages = null;
+        RuntimeException failure = null;
+        try {
+            insertedMessages = messageDAO.insertMessages(messages);
+        } catch (RuntimeException e) {
+            System.out.println(e.getMessage());
+            failure = e;
+        }
+        for (int i = 0; i < group.size(); i++) {
+            if (insertedMessages == null) {
+                group.get(i).fail("message group could not be written", failure);
+            } else {
+                group.get(i).result.complete(insertedMessages.get(i));
+            }
+        }
+    }
+
+    private static final class PendingInsert {
+        final Message message;
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingInsert(Message message) {
+            this.message = message;
+        }
+
+        void fail(String reason, Throwable cause) {
+            result.completeExceptionally(new UncheckedSQLException(new SQLTransientException(reason, cause)));
+        }
+    }
+}
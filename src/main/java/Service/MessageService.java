@@ -1,50 +1,343 @@
 package Service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import DAO.MessageDAO;
+import DAO.MessageStore;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessagePage;
+import Util.InvertedIndex;
+import Util.LruCache;
+import Util.RecentMessagesCache;
+import Util.UncheckedSQLException;
+import Util.Versions;
 
 /*
  * The purpose of the service class to to contain "business logic" betweent the web layer (controller) and persistence layer (DAO).
  */
 public class MessageService {
-    private MessageDAO messageDAO = new MessageDAO();
+    private final MessageStore messageDAO;
+    /**
+     * Used to check that posted_by refers to an existing account without going to the database.
+     */
+    private final AccountService accountService;
+    /**
+     * Read-through cache of messages by message id, including short-lived entries for ids that do not exist. Every
+     * method that changes a message invalidates its entry before returning. getMessage skips it when the store is
+     * in memory anyway.
+     */
+    private final LruCache<Integer, Message> messageCache = new LruCache<>(
+            Integer.getInteger("messages.cache.maxSize", 10000),
+            Long.getLong("messages.cache.ttlMillis", 0),
+            Long.getLong("messages.cache.negativeTtlMillis", 1000));
+    /**
+     * When group commit is enabled, createMessage hands its insert to this writer instead of committing on its own.
+     * Null when group commit is off.
+     */
+    private final GroupCommitWriter groupCommitWriter;
+    /**
+     * Full-text index of every message's text, built from the store in the background once the service is created
+     * and kept up to date by the methods that create, update and delete messages. Searches are refused until it is
+     * built.
+     */
+    private final InvertedIndex searchIndex = new InvertedIndex();
+    /**
+     * Index changes made while the index is being built, replayed onto it in order once the build has read the whole
+     * store. Null once the index is built, and between a failed build and the next attempt. Guarded by
+     * searchIndexLock.
+     */
+    private List<Consumer<InvertedIndex>> pendingSearchChanges;
+    private final ReentrantLock searchIndexLock = new ReentrantLock();
+    private final CountDownLatch searchIndexBuilt = new CountDownLatch(1);
+    /**
+     * Counted down by close(), which stops a build that is waiting to try again.
+     */
+    private final CountDownLatch closing = new CountDownLatch(1);
+    /**
+     * Locks striped by message id, held by updateMessage and deleteMessage from the store write until the search
+     * index is updated, so that the index sees changes to one message in the order the store made them and can not
+     * keep the terms of a text that was replaced. Changes to messages on different stripes never wait for each other.
+     */
+    private static final int MESSAGE_LOCK_STRIPES = 64;
+    private final ReentrantLock[] messageLocks = new ReentrantLock[MESSAGE_LOCK_STRIPES];
+    /**
+     * The newest messages of recently listed accounts, from which getMessagesFromAccount and
+     * getLatestMessagesFromAccount answer the pages that fit. Kept up to date by the methods that create, update and
+     * delete messages. Disabled, like the message cache, when the store is in memory anyway.
+     */
+    private final RecentMessagesCache recentMessages;
+    /**
+     * Version counters of messages, accounts' messages and all messages, from which the controller tags its
+     * responses. Bumped last by every method that changes a message, once the caches above are up to date.
+     */
+    private final Versions versions = new Versions();
 
     /**
-     * no-args constructor for creating a new AccountService with a new AccountDAO.
+     * no-args constructor for creating a new MessageService with a new MessageDAO and its own AccountService.
      */
     public MessageService() {
-        messageDAO = new MessageDAO();
+        this(new AccountService());
     }
 
     /**
-     * Use DAO to create a message
+     * constructor for creating a new MessageService with a new MessageDAO that checks posted_by against the accounts
+     * of accountService.
+     *
+     * @param accountService the service whose account index posted_by is validated against
+     */
+    public MessageService(AccountService accountService) {
+        this(accountService, new MessageDAO());
+    }
+
+    /**
+     * constructor for creating a new MessageService on a message store that checks posted_by against the accounts
+     * of accountService.
+     *
+     * @param accountService the service whose account index posted_by is validated against
+     * @param messageStore where messages are kept, such as a MessageDAO
+     */
+    public MessageService(AccountService accountService, MessageStore messageStore) {
+        messageDAO = messageStore;
+        this.accountService = accountService;
+        for (int i = 0; i < messageLocks.length; i++) messageLocks[i] = new ReentrantLock();
+        if (Boolean.getBoolean("messages.groupCommit.enabled")) {
+            groupCommitWriter = new GroupCommitWriter(messageDAO,
+                    Integer.getInteger("messages.groupCommit.maxBatchSize", 256),
+                    Long.getLong("messages.groupCommit.maxLingerMillis", 0),
+                    Integer.getInteger("messages.groupCommit.queueCapacity", 4096),
+                    Long.getLong("messages.groupCommit.submitTimeoutMillis", 1000));
+        } else {
+            groupCommitWriter = null;
+        }
+        int recentMessagesSize = messageDAO.isInMemory() ? 0 : Integer.getInteger("messages.recent.size", 100);
+        recentMessages = new RecentMessagesCache(recentMessagesSize,
+                Integer.getInteger("messages.recent.maxAccounts", 10000),
+                account_id -> messageDAO.getLatestMessagesFromAccountIdBefore(account_id, Long.MAX_VALUE,
+                        Integer.MAX_VALUE, recentMessagesSize + 1));
+        long searchIndexRetryMillis = Long.getLong("messages.search.retryMillis", 1000);
+        Thread searchIndexBuilder = new Thread(() -> buildSearchIndex(searchIndexRetryMillis), "search-index-builder");
+        searchIndexBuilder.setDaemon(true);
+        searchIndexBuilder.start();
+    }
+
+    /**
+     * Build the search index, trying again after a failure, such as the database being unavailable at startup. The
+     * wait between attempts starts at retryMillis and doubles up to a minute. Stops if the service is closed.
+     */
+    private void buildSearchIndex(long retryMillis) {
+        long waitMillis = Math.max(1, retryMillis);
+        while (!tryBuildSearchIndex()) {
+            try {
+                if (closing.await(waitMillis, TimeUnit.MILLISECONDS)) return;
+            } catch (InterruptedException e) {
+                return;
+            }
+            waitMillis = Math.min(waitMillis * 2, 60_000);
+        }
+    }
+
+    /**
+     * Index the text of every message already in the store, then replay the changes made meanwhile. The store may be
+     * read before or after any of those changes, but replaying them in order still leaves each message indexed under
+     * its current text: adding a message that is already indexed, or removing terms it is not indexed under, changes
+     * nothing.
+     *
+     * @return false if the store could not be read. Changes stop being queued until the next attempt, which starts
+     * from an empty index and reads them from the store instead
+     */
+    private boolean tryBuildSearchIndex() {
+        searchIndex.clear();
+        searchIndexLock.lock();
+        try {
+            pendingSearchChanges = new ArrayList<>();
+        } finally {
+            searchIndexLock.unlock();
+        }
+        try {
+            messageDAO.streamMessages(null, 0, Integer.MAX_VALUE,
+                    message -> searchIndex.add(message.getMessage_id(), message.getMessage_text()));
+        } catch (RuntimeException e) {
+            System.out.println(e.getMessage());
+            searchIndexLock.lock();
+            try {
+                pendingSearchChanges = null;
+            } finally {
+                searchIndexLock.unlock();
+            }
+            return false;
+        }
+        searchIndexLock.lock();
+        try {
+            for (Consumer<InvertedIndex> change : pendingSearchChanges) change.accept(searchIndex);
+            pendingSearchChanges = null;
+            searchIndexBuilt.countDown();
+        } finally {
+            searchIndexLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Apply a change to the search index, or queue it for the build to replay if the index is still being built.
+     * Between a failed build and the next attempt the change is dropped, since that attempt reads it from the store.
+     * Changes to one message must be made in the order the store made them.
+     */
+    private void changeSearchIndex(Consumer<InvertedIndex> change) {
+        if (searchIndexBuilt.getCount() > 0) {
+            searchIndexLock.lock();
+            try {
+                if (pendingSearchChanges != null) {
+                    pendingSearchChanges.add(change);
+                    return;
+                }
+                if (searchIndexBuilt.getCount() > 0) return;
+            } finally {
+                searchIndexLock.unlock();
+            }
+        }
+        change.accept(searchIndex);
+    }
+
+    /**
+     * @return whether the search index has been built. Until it is, searchMessages sees only some of the messages
+     */
+    public boolean isSearchIndexReady() {
+        return searchIndexBuilt.getCount() == 0;
+    }
+
+    /**
+     * Wait for the search index to be built.
+     */
+    public void awaitSearchIndex() throws InterruptedException {
+        searchIndexBuilt.await();
+    }
+
+    /**
+     * Use DAO to create a message. With group commit enabled (messages.groupCommit.enabled) the insert is queued and
+     * written together with other callers' inserts in one transaction, and this method returns once that transaction
+     * has committed.
      * 
      * @param message a message object
      * @return the newly created message if made
+     * @throws UncheckedSQLException caused by an SQLTransientException if group commit is enabled and the insert could
+     * not be queued or written, so that nothing was stored and the caller may try again later
      */
     public Message createMessage(Message message) {
-        /**
-         * Implement constraints here:
-         * - message_text must not be blank
-        */
-        if (message.getMessage_text() == null || message.getMessage_text() == "") return null;
+        if (!isValidMessage(message)) return null;
 
-        return messageDAO.insertMessage(message);
+        Message insertedMessage;
+        if (groupCommitWriter != null) {
+            try {
+                insertedMessage = groupCommitWriter.submit(message).join();
+            } catch (CompletionException e) {
+                throw (UncheckedSQLException) e.getCause();
+            }
+        } else {
+            insertedMessage = messageDAO.insertMessage(message);
+        }
+        if (insertedMessage != null) {
+            messageCache.invalidate(insertedMessage.getMessage_id());
+            changeSearchIndex(index -> index.add(insertedMessage.getMessage_id(), insertedMessage.getMessage_text()));
+            recentMessages.inserted(insertedMessage);
+            versions.changed(insertedMessage);
+        }
+        return insertedMessage;
     }
 
     /**
-     * Use DAO to retreive all messages
+     * The largest number of messages one batch creation request may hold.
+     */
+    public static final int MAX_BATCH_SIZE = Integer.getInteger("messages.batch.maxSize", 1000);
+
+    /**
+     * Use DAO to create several messages in one transaction. Every message is validated the same way as in
+     * createMessage, and the valid ones are inserted in a single batch.
      * 
-     * @return list of all messages
+     * @param messages the messages to create
+     * @return one result per message, in request order. Null if there are more than MAX_BATCH_SIZE messages or the
+     * batch could not be written
      */
-    public List<Message> retrieveMessages() {
-        return messageDAO.getAllMessages();
+    public List<MessageBatchResult> createMessages(List<Message> messages) {
+        if (messages == null || messages.size() > MAX_BATCH_SIZE) return null;
+
+        // Validate each message once: an account registering meanwhile must not make a second pass disagree
+        boolean[] valid = new boolean[messages.size()];
+        List<Message> validMessages = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            valid[i] = isValidMessage(messages.get(i));
+            if (valid[i]) validMessages.add(messages.get(i));
+        }
+        List<Message> insertedMessages = validMessages.isEmpty()
+                ? validMessages
+                : messageDAO.insertMessages(validMessages);
+        if (insertedMessages == null) return null;
+        for (Message insertedMessage : insertedMessages) {
+            if (insertedMessage == null) continue;
+            messageCache.invalidate(insertedMessage.getMessage_id());
+            changeSearchIndex(index -> index.add(insertedMessage.getMessage_id(), insertedMessage.getMessage_text()));
+            recentMessages.inserted(insertedMessage);
+            versions.changed(insertedMessage);
+        }
+
+        // Walk the request again, taking the insert results of the valid messages in order
+        List<MessageBatchResult> results = new ArrayList<>(messages.size());
+        int next = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            Message insertedMessage = valid[i] ? insertedMessages.get(next++) : null;
+            results.add(new MessageBatchResult(i, insertedMessage != null ? 200 : 400, insertedMessage));
+        }
+        return results;
+    }
+
+    /**
+     * Implement constraints here:
+     * - message_text must not be blank
+     * - message_text must not be over 255 characters
+     * - posted_by must refer to an existing account, checked against the account index rather than left to fail the
+     *   foreign key on insert
+     */
+    private boolean isValidMessage(Message message) {
+        if (message == null) return false;
+        if (message.getMessage_text() == null || message.getMessage_text().isEmpty()) return false;
+        if (message.getMessage_text().length() > 255) return false;
+        return accountService.accountExists(message.getPosted_by());
+    }
+
+    /**
+     * The largest page any listing returns, whatever limit the client asks for.
+     */
+    public static final int MAX_PAGE_SIZE = Integer.getInteger("messages.page.maxLimit", 1000);
+
+    /**
+     * Use DAO to retreive a page of messages
+     * 
+     * @param after_id_string the cursor of the previous page, blank for the first page
+     * @param limit_string the page size, blank for MAX_PAGE_SIZE
+     * @return page of messages. Null if the cursor or limit is not valid
+     */
+    public MessagePage retrieveMessages(String after_id_string, String limit_string) {
+        /**
+         * Implement constraints here:
+         * - after_id must be a number that is not negative
+         * - limit must be a positive number, and is capped at MAX_PAGE_SIZE
+        */
+        Integer after_id = parseCursor(after_id_string);
+        Integer limit = parseLimit(limit_string);
+        if (after_id == null || limit == null) return null;
+
+        // Ask for one extra row to find out whether there is a next page
+        return toPage(messageDAO.getMessagesAfterId(after_id, limit + 1), limit);
     }
 
     /**
-     * Use DAO to retreive a message
+     * Use DAO to retreive a message, answering from the message cache when it can
      * 
      * @return message with message id passed
      */
@@ -56,7 +349,8 @@ public class MessageService {
         if (message_id_string == null || message_id_string == "") return null;
         
         int message_id = Integer.parseInt(message_id_string);
-        return messageDAO.getMessageById(message_id);
+        if (messageDAO.isInMemory()) return messageDAO.getMessageById(message_id);
+        return messageCache.get(message_id, messageDAO::getMessageById);
     }
 
     /**
@@ -72,7 +366,20 @@ public class MessageService {
         if (message_id_string == null || message_id_string == "") return null;
 
         int message_id = Integer.parseInt(message_id_string);
-        return messageDAO.deleteMessageById(message_id);
+        ReentrantLock messageLock = messageLock(message_id);
+        messageLock.lock();
+        try {
+            Message deletedMessage = messageDAO.deleteMessageById(message_id);
+            messageCache.invalidate(message_id);
+            if (deletedMessage != null) {
+                changeSearchIndex(index -> index.remove(message_id, deletedMessage.getMessage_text()));
+                recentMessages.deleted(deletedMessage);
+                versions.changed(deletedMessage);
+            }
+            return deletedMessage;
+        } finally {
+            messageLock.unlock();
+        }
     }
 
     /**
@@ -90,19 +397,268 @@ public class MessageService {
         if (message_text == null || message_text == "" || message_text.length() > 255) return null;
 
         int message_id = Integer.parseInt(message_id_string);
-        return messageDAO.updateMessageById(message_id, message_text);
+        ReentrantLock messageLock = messageLock(message_id);
+        messageLock.lock();
+        try {
+            // The store hands back the message as it was, whose terms come out of the index
+            Message previousMessage = messageDAO.updateMessageById(message_id, message_text);
+            messageCache.invalidate(message_id);
+            if (previousMessage == null) return null;
+            Message updatedMessage = new Message(message_id, previousMessage.getPosted_by(), message_text,
+                    previousMessage.getTime_posted_epoch());
+            changeSearchIndex(index -> {
+                index.remove(message_id, previousMessage.getMessage_text());
+                index.add(message_id, message_text);
+            });
+            recentMessages.updated(updatedMessage);
+            versions.changed(updatedMessage);
+            return updatedMessage;
+        } finally {
+            messageLock.unlock();
+        }
+    }
+
+    private ReentrantLock messageLock(int message_id) {
+        return messageLocks[(message_id ^ message_id >>> 16) & (MESSAGE_LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Use DAO to retrieve a page of messages from specific account. When the account's messages are all in the
+     * recent messages cache the page is answered from it instead
+     * 
+     * @param account_id_string the account whose messages are listed
+     * @param after_id_string the cursor of the previous page, blank for the first page
+     * @param limit_string the page size, blank for MAX_PAGE_SIZE
+     * @return page of messages from specific account. Null if the account id, cursor or limit is not valid
+     */
+    public MessagePage getMessagesFromAccount(String account_id_string, String after_id_string, String limit_string) {
+        if (account_id_string == null || account_id_string == "") return null;
+        Integer after_id = parseCursor(after_id_string);
+        Integer limit = parseLimit(limit_string);
+        if (after_id == null || limit == null) return null;
+
+        int account_id = Integer.parseInt(account_id_string);
+        List<Message> messages = accountService.accountExists(account_id)
+                ? recentMessages.getAfterId(account_id, after_id, limit + 1)
+                : null;
+        if (messages == null) messages = messageDAO.getMessagesFromAccountIdAfterId(account_id, after_id, limit + 1);
+        return toPage(messages, limit);
     }
 
     /**
-     * Use DAO to retrieve all messages from specific account
+     * Use DAO to retrieve a page of the latest messages from specific account, newest first. A page that lies within
+     * the account's newest messages (messages.recent.size, 100 by default) is answered from the recent messages cache
+     * instead
      * 
-     * @return list of messages from specific account
+     * @param account_id_string the account whose messages are listed
+     * @param before_string only messages posted before this epoch time are listed, blank for no bound
+     * @param after_id_string from the previous page's cursor: messages posted exactly at before with a greater message
+     * id are listed too. Blank makes before exclusive
+     * @param limit_string the page size, blank for MAX_PAGE_SIZE
+     * @return page of messages from specific account. Null if the account id, time, cursor or limit is not valid
      */
-    public List<Message> getAllMessagesFromAccount(String account_id_string) {
+    public MessagePage getLatestMessagesFromAccount(String account_id_string, String before_string,
+            String after_id_string, String limit_string) {
         if (account_id_string == null || account_id_string == "") return null;
+        long before = Long.MAX_VALUE;
+        int after_id = Integer.MAX_VALUE;
+        try {
+            if (before_string != null && !before_string.isEmpty()) before = Long.parseLong(before_string);
+            if (after_id_string != null && !after_id_string.isEmpty()) after_id = Integer.parseInt(after_id_string);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        Integer limit = parseLimit(limit_string);
+        if (limit == null) return null;
 
         int account_id = Integer.parseInt(account_id_string);
-        return messageDAO.getAllMessagesFromAccountId(account_id);
+        List<Message> messages = accountService.accountExists(account_id)
+                ? recentMessages.getLatest(account_id, before, after_id, limit + 1)
+                : null;
+        if (messages == null) {
+            messages = messageDAO.getLatestMessagesFromAccountIdBefore(account_id, before, after_id, limit + 1);
+        }
+        if (messages.size() <= limit) return new MessagePage(messages, null, null);
+
+        List<Message> page = messages.subList(0, limit);
+        Message last = page.get(limit - 1);
+        return new MessagePage(page, last.getMessage_id(), last.getTime_posted_epoch());
+    }
+
+    /**
+     * Search the text of every message, newest first. A message matches when its text holds every term of the query,
+     * where terms are runs of letters and digits compared without case, so "Hello world" matches "hello, World!"
+     * but not "hello there". Newest means the largest message id, the order messages were created in.
+     * 
+     * @param query the words to search for
+     * @param before_id_string the cursor of the previous page: only messages with a smaller message id are listed,
+     * blank for the first page
+     * @param limit_string the page size, blank for MAX_PAGE_SIZE
+     * @return page of matching messages. Null if the query has no terms or the cursor or limit is not valid
+     */
+    public MessagePage searchMessages(String query, String before_id_string, String limit_string) {
+        List<String> terms = InvertedIndex.terms(query);
+        if (terms.isEmpty()) return null;
+        int before_id = Integer.MAX_VALUE;
+        if (before_id_string != null && !before_id_string.isEmpty()) {
+            try {
+                before_id = Integer.parseInt(before_id_string);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (before_id < 1) return null;
+        }
+        Integer limit = parseLimit(limit_string);
+        if (limit == null) return null;
+
+        // Ask for one extra id to find out whether there is a next page
+        int[] ids = searchIndex.search(terms, before_id, limit + 1);
+        int pageSize = Math.min(ids.length, limit);
+        List<Message> messages = new ArrayList<>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            // A message deleted since the search is left out of the page
+            Message message = messageDAO.isInMemory()
+                    ? messageDAO.getMessageById(ids[i])
+                    : messageCache.get(ids[i], messageDAO::getMessageById);
+            if (message != null) messages.add(message);
+        }
+        return new MessagePage(messages, ids.length > limit ? ids[limit - 1] : null);
+    }
+
+    /**
+     * Use DAO to stream messages, optionally from a specific account, without holding the listing in memory. Unlike
+     * the paged listings the limit is not capped, and without a limit every remaining message is streamed.
+     * 
+     * @param account_id_string the account whose messages are streamed, null for every account
+     * @param after_id_string only messages after this message id are streamed, blank to start at the first
+     * @param limit_string the maximum number of messages to stream, blank for no limit
+     * @param consumer receives each message in ascending message id order
+     * @return false, without streaming anything, if the account id, cursor or limit is not valid
+     */
+    public boolean streamMessages(String account_id_string, String after_id_string, String limit_string,
+            Consumer<Message> consumer) {
+        Integer account_id = null;
+        if (account_id_string != null) {
+            try {
+                account_id = Integer.parseInt(account_id_string);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        Integer after_id = parseCursor(after_id_string);
+        Integer limit = parseLimit(limit_string, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        if (after_id == null || limit == null) return false;
+
+        messageDAO.streamMessages(account_id, after_id, limit, consumer);
+        return true;
+    }
+
+    /**
+     * Stop the group commit writer, if there is one, after it has written the inserts already queued, then close the
+     * message store.
+     */
+    public void close() {
+        closing.countDown();
+        if (groupCommitWriter != null) groupCommitWriter.close();
+        messageDAO.close();
+    }
+
+    /**
+     * @return the cache getMessage reads through, for reporting its hit ratio, evictions and size
+     */
+    public LruCache<Integer, Message> getMessageCache() {
+        return messageCache;
+    }
+
+    /**
+     * Get the entity tag of the current version of a message, for GET /messages/{message_id}. Taken before the
+     * message is read, the tag is never newer than the message.
+     * 
+     * @return the tag, or null if the message id is not a number
+     */
+    public String getMessageTag(String message_id_string) {
+        try {
+            return versions.getMessageTag(Integer.parseInt(message_id_string));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the entity tag of the current version of an account's messages, for any listing of them.
+     * 
+     * @return the tag, or null if the account id is not a number
+     */
+    public String getAccountTag(String account_id_string) {
+        try {
+            return versions.getAccountTag(Integer.parseInt(account_id_string));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the entity tag of the current version of all messages, for listings and searches across accounts.
+     */
+    public String getGlobalTag() {
+        return versions.getGlobalTag();
+    }
+
+    /**
+     * @return the cache of accounts' newest messages, for reporting its hit ratio, evictions and size
+     */
+    public RecentMessagesCache getRecentMessages() {
+        return recentMessages;
+    }
+
+    /**
+     * @return the index searchMessages answers from, for reporting its size
+     */
+    public InvertedIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @return the after_id cursor, 0 if none was given, or null if it is not a valid message id
+     */
+    private static Integer parseCursor(String after_id_string) {
+        if (after_id_string == null || after_id_string.isEmpty()) return 0;
+        try {
+            int after_id = Integer.parseInt(after_id_string);
+            return after_id < 0 ? null : after_id;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the page size capped at MAX_PAGE_SIZE, MAX_PAGE_SIZE if none was given, or null if it is not positive
+     */
+    private static Integer parseLimit(String limit_string) {
+        return parseLimit(limit_string, MAX_PAGE_SIZE, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * @return the limit capped at max, defaultLimit if none was given, or null if it is not positive
+     */
+    private static Integer parseLimit(String limit_string, int defaultLimit, int max) {
+        if (limit_string == null || limit_string.isEmpty()) return defaultLimit;
+        try {
+            int limit = Integer.parseInt(limit_string);
+            return limit < 1 ? null : Math.min(limit, max);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Turn a result fetched with limit + 1 rows into a page of at most limit messages
+     */
+    private static MessagePage toPage(List<Message> messages, int limit) {
+        if (messages.size() <= limit) return new MessagePage(messages, null);
+
+        List<Message> page = messages.subList(0, limit);
+        return new MessagePage(page, page.get(limit - 1).getMessage_id());
     }
 
 }
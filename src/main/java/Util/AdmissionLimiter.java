@@ -0,0 +1,158 @@
+package Util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounds how many requests of one class run at once, so that a slow database makes the excess fail fast instead of
+ * piling up on server threads until everything times out together.
+ *
+ * Up to maxInFlight requests are admitted at once. The next maxQueued wait, for at most maxWaitMillis, for one of
+ * them to finish; a request that finds the queue full, or is still waiting when its time is up, is rejected and
+ * should be answered with 503 straight away. Admission is not strictly first come first served: a request arriving
+ * just as one finishes may be admitted ahead of those waiting, which keeps the server busy but can leave a waiter to
+ * time out.
+ */
+public class AdmissionLimiter {
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition finished = lock.newCondition();
+    /**
+     * Requests admitted and not yet released, guarded by lock.
+     */
+    private int inFlight;
+    /**
+     * Requests waiting to be admitted, guarded by lock.
+     */
+    private int queued;
+
+    private final AtomicLong admittedCount = new AtomicLong();
+    private final AtomicLong queueFullCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * @param maxInFlight the most requests admitted at once, at least 1
+     * @param maxQueued the most requests waiting to be admitted, 0 to reject at once when maxInFlight are running
+     * @param maxWaitMillis how long a request waits to be admitted before it is rejected
+     */
+    public AdmissionLimiter(int maxInFlight, int maxQueued, long maxWaitMillis) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight must be at least 1");
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+    }
+
+    /**
+     * Admit a request, waiting in the queue if maxInFlight are already running. Every true return must be matched by
+     * one release().
+     *
+     * @return false if the request is rejected, because the queue was full, it waited maxWaitMillis without being
+     * admitted, or its thread was interrupted
+     */
+    public boolean acquire() {
+        lock.lock();
+        try {
+            if (inFlight < maxInFlight) {
+                inFlight++;
+                admittedCount.incrementAndGet();
+                return true;
+            }
+            if (queued >= maxQueued) {
+                queueFullCount.incrementAndGet();
+                return false;
+            }
+            queued++;
+            try {
+                long remainingNanos = maxWaitNanos;
+                while (inFlight >= maxInFlight) {
+                    if (remainingNanos <= 0) {
+                        timeoutCount.incrementAndGet();
+                        return false;
+                    }
+                    remainingNanos = finished.awaitNanos(remainingNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                timeoutCount.incrementAndGet();
+                return false;
+            } finally {
+                queued--;
+            }
+            inFlight++;
+            admittedCount.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Let the next request in, once an admitted one has finished.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            if (queued > 0) finished.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests admitted and still running
+     */
+    public int getInFlightCount() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of requests waiting to be admitted
+     */
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the configured maximum number of requests admitted at once
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @return how many requests were admitted, at once or after waiting
+     */
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    /**
+     * @return how many requests were rejected because the queue was full
+     */
+    public long getQueueFullCount() {
+        return queueFullCount.get();
+    }
+
+    /**
+     * @return how many requests were rejected after waiting too long to be admitted
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+}
@@ -0,0 +1,488 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+/**
+ * A bounded pool of JDBC connections sitting in front of a DataSource.
+ *
+ * Connections handed out by the pool are proxies: calling close() on them returns the physical connection to the pool
+ * instead of closing it. Borrowing is re-entrant per thread, so nested getConnection() calls on one thread (for example
+ * a DAO method calling another DAO method) share the same physical connection until the outermost borrower closes it.
+ * This also bounds the damage done by callers that never close their connection: such a thread keeps re-using the one
+ * connection it already holds rather than draining the pool.
+ *
+ * Each physical connection keeps a StatementCache, so prepareStatement(sql) and prepareStatement(sql, keys) on a
+ * pooled connection re-use a statement prepared by an earlier borrower instead of parsing the SQL again.
+ *
+ * Calling abort() on a pooled connection closes the physical connection, and the pool opens a new one in its place
+ * rather than handing it out again.
+ *
+ * The pool uses a ReentrantLock rather than synchronized blocks so that waiting callers never pin a carrier thread.
+ */
+public class ConnectionPool {
+    private final DataSource dataSource;
+    private final int maxSize;
+    private final int minIdle;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final boolean validateOnBorrow;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    /**
+     * Idle connections, most recently returned first. Guarded by lock.
+     */
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    /**
+     * Physical connections that are open or being opened, guarded by lock.
+     */
+    private int total;
+    private int active;
+    private int waiting;
+    private boolean closed;
+
+    private final ThreadLocal<Lease> currentLease = new ThreadLocal<>();
+    private final ScheduledExecutorService evictor;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final ConcurrentMap<String, StatementCache.Counters> statementCounters = new ConcurrentHashMap<>();
+
+    /**
+     * @param dataSource the source of physical connections
+     * @param maxSize the maximum number of physical connections open at once
+     * @param minIdle the number of idle connections idle eviction will always keep open
+     * @param acquireTimeoutMillis how long getConnection() waits for a free connection before failing
+     * @param idleTimeoutMillis how long a connection may sit idle before it is closed, 0 disables eviction
+     * @param validateOnBorrow whether idle connections are checked with isValid() before being handed out
+     * @param statementCacheSize how many prepared statements each connection keeps, 0 disables statement caching
+     */
+    public ConnectionPool(DataSource dataSource, int maxSize, int minIdle, long acquireTimeoutMillis,
+            long idleTimeoutMillis, boolean validateOnBorrow, int statementCacheSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be at least 1");
+        this.dataSource = dataSource;
+        this.maxSize = maxSize;
+        this.minIdle = Math.max(0, Math.min(minIdle, maxSize));
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validateOnBorrow = validateOnBorrow;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+
+        if (idleTimeoutMillis > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "connection-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(1000, idleTimeoutMillis / 2);
+            evictor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    /**
+     * Borrow a connection. If the calling thread already holds one, the same connection is returned again and must be
+     * closed once more before it goes back to the pool.
+     *
+     * @return a pooled connection, closing it returns it to the pool
+     * @throws SQLException if no connection became free within the acquisition timeout or a new one could not be opened
+     */
+    public Connection getConnection() throws SQLException {
+        Lease lease = currentLease.get();
+        if (lease != null && !lease.closed) {
+            lease.holdCount++;
+            return lease.proxy;
+        }
+
+        PooledConnection pooledConnection = acquire();
+        lease = new Lease(pooledConnection);
+        currentLease.set(lease);
+        borrowCount.incrementAndGet();
+        return lease.proxy;
+    }
+
+    /**
+     * Take an idle connection, open a new one, or wait for one to be returned.
+     */
+    private PooledConnection acquire() throws SQLException {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        while (true) {
+            PooledConnection candidate = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) throw new SQLException("Connection pool is closed");
+                    candidate = idle.pollFirst();
+                    if (candidate != null) break;
+                    if (total < maxSize) {
+                        total++;
+                        create = true;
+                        break;
+                    }
+                    if (remainingNanos <= 0) {
+                        timeoutCount.incrementAndGet();
+                        throw new SQLTransientConnectionException("Timed out after " + acquireTimeoutMillis
+                                + "ms waiting for a connection (active=" + active + ", max=" + maxSize + ")");
+                    }
+                    waiting++;
+                    try {
+                        remainingNanos = available.awaitNanos(remainingNanos);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection", e);
+                    } finally {
+                        waiting--;
+                    }
+                }
+                active++;
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                try {
+                    Connection physical = dataSource.getConnection();
+                    createdCount.incrementAndGet();
+                    StatementCache statements = statementCacheSize > 0
+                            ? new StatementCache(physical, statementCacheSize, statementCounters)
+                            : null;
+                    return new PooledConnection(physical, statements);
+                } catch (SQLException | RuntimeException e) {
+                    discard(null);
+                    throw e;
+                }
+            }
+
+            if (!validateOnBorrow || isValid(candidate)) return candidate;
+            validationFailureCount.incrementAndGet();
+            discard(candidate);
+        }
+    }
+
+    private boolean isValid(PooledConnection pooledConnection) {
+        try {
+            return pooledConnection.physical.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Return a connection to the pool once its outermost borrower has closed it.
+     */
+    private void release(PooledConnection pooledConnection) {
+        if (pooledConnection.statements != null) pooledConnection.statements.checkInAll();
+        try {
+            Connection physical = pooledConnection.physical;
+            if (physical.isClosed()) {
+                discard(pooledConnection);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            discard(pooledConnection);
+            return;
+        }
+
+        boolean closeNow;
+        lock.lock();
+        try {
+            active--;
+            closeNow = closed;
+            if (closeNow) {
+                total--;
+            } else {
+                pooledConnection.lastReturnedMillis = System.currentTimeMillis();
+                idle.addFirst(pooledConnection);
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (closeNow) closeQuietly(pooledConnection);
+    }
+
+    /**
+     * Forget about a borrowed (or never opened) connection and close it.
+     */
+    private void discard(PooledConnection pooledConnection) {
+        lock.lock();
+        try {
+            active--;
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (pooledConnection != null) closeQuietly(pooledConnection);
+    }
+
+    /**
+     * Close connections that have been idle longer than the idle timeout, keeping at least minIdle open.
+     */
+    void evictIdleConnections() {
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+        Deque<PooledConnection> evicted = new ArrayDeque<>();
+        lock.lock();
+        try {
+            Iterator<PooledConnection> oldestFirst = idle.descendingIterator();
+            while (oldestFirst.hasNext() && idle.size() > minIdle) {
+                PooledConnection pooledConnection = oldestFirst.next();
+                if (pooledConnection.lastReturnedMillis > cutoff) break;
+                oldestFirst.remove();
+                total--;
+                evicted.add(pooledConnection);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (PooledConnection pooledConnection : evicted) {
+            closeQuietly(pooledConnection);
+            evictedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Close every idle connection and refuse further borrows. Connections still borrowed are closed as they come back.
+     */
+    public void close() {
+        Deque<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            total -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (evictor != null) evictor.shutdownNow();
+        for (PooledConnection pooledConnection : toClose) closeQuietly(pooledConnection);
+    }
+
+    private void closeQuietly(PooledConnection pooledConnection) {
+        if (pooledConnection.statements != null) pooledConnection.statements.closeAll();
+        try {
+            pooledConnection.physical.close();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * @return the configured maximum number of physical connections
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of connections currently borrowed
+     */
+    public int getActiveCount() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of open connections sitting in the pool
+     */
+    public int getIdleCount() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of callers currently blocked waiting for a connection
+     */
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of physical connections open, borrowed or idle
+     */
+    public int getTotalCount() {
+        lock.lock();
+        try {
+            return total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how many times a connection has been borrowed (re-entrant borrows are not counted)
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * @return how many physical connections have been opened
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return how many idle connections were closed by idle eviction
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * @return how many idle connections failed validation on borrow
+     */
+    public long getValidationFailureCount() {
+        return validationFailureCount.get();
+    }
+
+    /**
+     * @return how many borrowers gave up after the acquisition timeout
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * @return prepared statement cache hits, misses and evictions by SQL text, summed over every connection
+     */
+    public Map<String, StatementCache.Counters> getStatementCacheCounters() {
+        return Collections.unmodifiableMap(statementCounters);
+    }
+
+    /**
+     * A physical connection owned by the pool, with the statements cached on it.
+     */
+    private static class PooledConnection {
+        final Connection physical;
+        final StatementCache statements;
+        long lastReturnedMillis;
+
+        PooledConnection(Connection physical, StatementCache statements) {
+            this.physical = physical;
+            this.statements = statements;
+        }
+    }
+
+    /**
+     * One borrow of a pooled connection. The proxy handed to callers is only usable until the lease is closed, so a
+     * caller holding on to a closed connection cannot reach a physical connection that now belongs to someone else.
+     */
+    private class Lease implements InvocationHandler {
+        final PooledConnection pooledConnection;
+        final Connection proxy;
+        int holdCount = 1;
+        volatile boolean closed;
+
+        Lease(PooledConnection pooledConnection) {
+            this.pooledConnection = pooledConnection;
+            this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    close();
+                    return null;
+                case "isClosed":
+                    return closed || pooledConnection.physical.isClosed();
+                case "abort":
+                    // H2 ignores abort, so close the physical connection, which the pool drops once it is released
+                    if (!closed) pooledConnection.physical.close();
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pooledConnection.physical + "]";
+                default:
+                    break;
+            }
+            if (closed) throw new SQLException("Connection is closed");
+            if (pooledConnection.statements != null && method.getName().equals("prepareStatement")) {
+                PreparedStatement cached = prepareCached((String) args[0], method, args);
+                if (cached != null) return cached;
+            }
+            try {
+                return method.invoke(pooledConnection.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        /**
+         * @return a statement from the cache, or null when the overload called is not one the cache handles
+         */
+        private PreparedStatement prepareCached(String sql, Method method, Object[] args) throws SQLException {
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            if (parameterTypes.length == 1) {
+                return pooledConnection.statements.prepare(proxy, sql, Statement.NO_GENERATED_KEYS);
+            }
+            if (parameterTypes.length == 2 && parameterTypes[1] == int.class) {
+                return pooledConnection.statements.prepare(proxy, sql, (Integer) args[1]);
+            }
+            return null;
+        }
+
+        private void close() {
+            if (closed) return;
+            if (--holdCount > 0) return;
+            closed = true;
+            if (currentLease.get() == this) currentLease.remove();
+            release(pooledConnection);
+        }
+    }
+}
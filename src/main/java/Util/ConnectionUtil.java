@@ -13,7 +13,15 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are handed out by a bounded ConnectionPool. The pool can be tuned
+ * with the system properties db.url, db.user, db.password, db.pool.maxSize,
+ * db.pool.minIdle, db.pool.acquireTimeoutMillis, db.pool.idleTimeoutMillis,
+ * db.pool.validateOnBorrow and db.pool.statementCacheSize.
+ *
+ * Unless db.queryStats.enabled is false, the connections handed out are
+ * instrumented: the time spent borrowing them, and executing and iterating
+ * each SQL statement, is recorded in a QueryStats, and statements taking at
+ * least db.slowQueryMillis (200) are logged with their plan.
  */
 public class ConnectionUtil {
 
@@ -21,41 +29,108 @@ public class ConnectionUtil {
 	 * url will represent our connection string. Since this is an in-memory db, we
 	 * will represent a file location to store the data
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
-	private static String username = "sa";
+	private static String username = System.getProperty("db.user", "sa");
 	/**
 	 * Default password for connecting to h2
 	 */
-	private static String password = "sa";
+	private static String password = System.getProperty("db.password", "sa");
+
+	/**
+	 * DataSource the pool opens its physical connections from.
+	 */
+	private static JdbcDataSource dataSource = new JdbcDataSource();
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * Bounded pool of connections. Closing a connection returns it here instead of closing it.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static ConnectionPool pool;
+
+	/**
+	 * Timings of the statements run on pooled connections, null when instrumentation is disabled.
+	 */
+	private static QueryStats queryStats;
 
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("db.pool.maxSize", 10),
+				Integer.getInteger("db.pool.minIdle", 1),
+				Long.getLong("db.pool.acquireTimeoutMillis", 30000),
+				Long.getLong("db.pool.idleTimeoutMillis", 600000),
+				Boolean.parseBoolean(System.getProperty("db.pool.validateOnBorrow", "true")),
+				Integer.getInteger("db.pool.statementCacheSize", 64));
+		if (Boolean.parseBoolean(System.getProperty("db.queryStats.enabled", "true"))) {
+			queryStats = new QueryStats(Long.getLong("db.slowQueryMillis", 200));
+		}
 	}
 
 	/**
+	 * Borrow a connection from the pool. Calls made on the same thread before the connection is closed get the same
+	 * connection back, so a connection that is never closed stays with its thread rather than leaking from the pool.
+	 *
 	 * @return an active connection to the database
+	 * @throws UncheckedSQLException if no connection could be had. Its cause is an SQLTransientConnectionException
+	 * when none became free within the pool's acquisition timeout
 	 */
 	public static Connection getConnection() {
 		try {
-			return pool.getConnection();
+			if (queryStats == null) return pool.getConnection();
+			long start = System.nanoTime();
+			Connection connection = pool.getConnection();
+			return queryStats.wrap(connection, System.nanoTime() - start);
+		} catch (SQLException e) {
+			throw new UncheckedSQLException(e);
+		}
+	}
+
+	/**
+	 * Give a connection obtained from getConnection() back to the pool.
+	 *
+	 * @param connection the connection to return, may be null
+	 */
+	public static void releaseConnection(Connection connection) {
+		if (connection == null) return;
+		try {
+			connection.close();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
+	}
 
-		return null;
+	/**
+	 * Abort a connection left in a state the next borrower must not inherit: the physical connection behind it is
+	 * closed, and the pool drops it when it is released instead of handing it out again.
+	 */
+	public static void discardConnection(Connection connection) {
+		if (connection == null) return;
+		try {
+			connection.abort(Runnable::run);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @return the pool behind getConnection(), for reading its active, idle and waiting counters
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * @return the timings of statements run on pooled connections, or null when instrumentation is disabled
+	 */
+	public static QueryStats getQueryStats() {
+		return queryStats;
 	}
 
 	/**
@@ -64,11 +139,14 @@ public class ConnectionUtil {
 	 * file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
+		Connection connection = getConnection();
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
+		} finally {
+			releaseConnection(connection);
 		}
 	}
 }
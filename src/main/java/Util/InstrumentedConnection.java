@@ -0,0 +1,225 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A connection that times the statements prepared or created on it and records them in a QueryStats.
+ *
+ * Statements and result sets are proxied as well, so that execution and iteration can be timed per SQL text. The DAOs
+ * leave their statements open and only close the connection, so closing the connection finishes any result set still
+ * being iterated before the wrapped connection is closed.
+ *
+ * Like the pooled connection it wraps, an instrumented connection is only used by the thread that borrowed it.
+ */
+class InstrumentedConnection implements InvocationHandler {
+    private final QueryStats stats;
+    private final Connection delegate;
+    final Connection proxy;
+    private final List<TimedStatement> statements = new ArrayList<>();
+
+    InstrumentedConnection(QueryStats stats, Connection delegate) {
+        this.stats = stats;
+        this.delegate = delegate;
+        this.proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "close":
+                for (int i = statements.size() - 1; i >= 0; i--) statements.get(i).finishResults();
+                statements.clear();
+                delegate.close();
+                return null;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Instrumented[" + delegate + "]";
+            default:
+                break;
+        }
+        Object result = invokeOn(delegate, method, args);
+        switch (method.getName()) {
+            case "prepareStatement":
+                return new TimedStatement(PreparedStatement.class, (Statement) result, (String) args[0]).proxy;
+            case "createStatement":
+                return new TimedStatement(Statement.class, (Statement) result, null).proxy;
+            default:
+                return result;
+        }
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A statement whose executions are timed. Parameters set on a prepared statement are remembered so a slow
+     * execution can be explained with the values it ran with.
+     */
+    private class TimedStatement implements InvocationHandler {
+        final Statement statement;
+        final Statement proxy;
+        final String sql;
+        Object[] parameters;
+        TimedResultSet results;
+
+        TimedStatement(Class<? extends Statement> type, Statement statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+            this.parameters = sql != null ? new Object[8] : null;
+            this.proxy = (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, this);
+            statements.add(this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    finishResults();
+                    statements.remove(this);
+                    statement.close();
+                    return null;
+                case "getConnection":
+                    return InstrumentedConnection.this.proxy;
+                case "clearParameters":
+                    if (parameters != null) Arrays.fill(parameters, null);
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented[" + statement + "]";
+                default:
+                    break;
+            }
+            if (name.startsWith("execute")) return execute(method, args);
+            if (parameters != null && name.startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer) {
+                remember((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            }
+            return invokeOn(statement, method, args);
+        }
+
+        private void remember(int index, Object value) {
+            if (index < 1) return;
+            if (index >= parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(index + 1, parameters.length * 2));
+            }
+            parameters[index] = value;
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finishResults();
+            String text = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            QueryStats.Timings timings = stats.timings(text != null ? text : "(batch)");
+            Object result;
+            long start = System.nanoTime();
+            try {
+                result = method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                timings.recordError();
+                throw e.getCause();
+            }
+            long executed = System.nanoTime();
+            timings.recordExecute(executed - start);
+
+            if (result instanceof ResultSet) {
+                results = new TimedResultSet(this, (ResultSet) result, timings, executed - start, executed);
+                return results.proxy;
+            }
+            long rows = result instanceof Number ? ((Number) result).longValue() : 0;
+            stats.finish(timings, executed - start, 0, rows, delegate, parameters);
+            return result;
+        }
+
+        void finishResults() {
+            if (results != null) {
+                results.finish();
+                results = null;
+            }
+        }
+    }
+
+    /**
+     * A result set whose iteration is timed from the query returning until the last row is read or it is closed.
+     */
+    private class TimedResultSet implements InvocationHandler {
+        final TimedStatement statement;
+        final ResultSet resultSet;
+        final ResultSet proxy;
+        final QueryStats.Timings timings;
+        final long executeNanos;
+        final long startNanos;
+        long fetchNanos;
+        long rows;
+        boolean finished;
+
+        TimedResultSet(TimedStatement statement, ResultSet resultSet, QueryStats.Timings timings, long executeNanos,
+                long startNanos) {
+            this.statement = statement;
+            this.resultSet = resultSet;
+            this.timings = timings;
+            this.executeNanos = executeNanos;
+            this.startNanos = startNanos;
+            this.proxy = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    long start = System.nanoTime();
+                    boolean hasRow = (Boolean) invokeOn(resultSet, method, args);
+                    fetchNanos += System.nanoTime() - start;
+                    if (hasRow) {
+                        rows++;
+                    } else {
+                        finish();
+                    }
+                    return hasRow;
+                case "close":
+                    finish();
+                    resultSet.close();
+                    return null;
+                case "getStatement":
+                    return statement.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Instrumented[" + resultSet + "]";
+                default:
+                    return invokeOn(resultSet, method, args);
+            }
+        }
+
+        void finish() {
+            if (finished) return;
+            finished = true;
+            timings.recordIterate(System.nanoTime() - startNanos, fetchNanos, rows);
+            stats.finish(timings, executeNanos, fetchNanos, rows, delegate, statement.parameters);
+        }
+    }
+}
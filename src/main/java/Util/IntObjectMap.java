@@ -0,0 +1,182 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A hash map from primitive int keys to objects, so looking a value up never boxes its key.
+ *
+ * Keys and values sit in two parallel arrays and collisions are resolved by linear probing; removal shifts the
+ * following entries of the probe run back rather than leaving tombstones, so lookups never slow down after many
+ * removals. The key 0 marks a free slot and is stored apart from the arrays.
+ *
+ * Not thread safe: callers that share a map guard it themselves.
+ */
+public class IntObjectMap<V> {
+    private static final int FREE = 0;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int resizeAt;
+    private boolean hasZeroKey;
+    private V zeroValue;
+
+    public IntObjectMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize how many entries the map should hold before it first grows
+     */
+    public IntObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 4 / 3 + 1) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return the value for key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == FREE) return hasZeroKey ? zeroValue : null;
+        int slot = slotOf(key);
+        while (true) {
+            int slotKey = keys[slot];
+            if (slotKey == key) return (V) values[slot];
+            if (slotKey == FREE) return null;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @return true if the map holds a value for key
+     */
+    public boolean containsKey(int key) {
+        if (key == FREE) return hasZeroKey;
+        return get(key) != null;
+    }
+
+    /**
+     * @param value the value to store, must not be null
+     * @return the value previously stored for key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) throw new NullPointerException("value");
+        if (key == FREE) {
+            V previous = zeroValue;
+            if (!hasZeroKey) size++;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            int slotKey = keys[slot];
+            if (slotKey == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (slotKey == FREE) break;
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeAt) allocate(keys.length * 2);
+        return null;
+    }
+
+    /**
+     * @return the value that was stored for key, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == FREE) {
+            if (!hasZeroKey) return null;
+            V previous = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            size--;
+            return previous;
+        }
+        int slot = slotOf(key);
+        while (true) {
+            int slotKey = keys[slot];
+            if (slotKey == FREE) return null;
+            if (slotKey == key) break;
+            slot = (slot + 1) & mask;
+        }
+        V previous = (V) values[slot];
+        size--;
+
+        // Shift later entries of the probe run back into the gap, unless that would move one before its home slot
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = slotOf(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+        return previous;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Remove every entry, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Pass every value to action, in no particular order.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        if (hasZeroKey) action.accept(zeroValue);
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != FREE) action.accept((V) values[slot]);
+        }
+    }
+
+    private int slotOf(int key) {
+        return (key * 0x9E3779B9 >>> 16 ^ key * 0x9E3779B9) & mask;
+    }
+
+    private void allocate(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity * 3 / 4;
+        if (oldKeys == null) return;
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key == FREE) continue;
+            int slot = slotOf(key);
+            while (keys[slot] != FREE) slot = (slot + 1) & mask;
+            keys[slot] = key;
+            values[slot] = oldValues[i];
+        }
+    }
+}
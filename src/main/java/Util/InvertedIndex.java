@@ -0,0 +1,184 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A thread-safe full-text index from the terms of a document's text to the ids of the documents that hold them.
+ *
+ * Text is split into terms at every character that is not a letter or digit, and terms are lower-cased, so "Hello,
+ * World!" holds the terms "hello" and "world". Each term's ids are kept in a compressed PostingList. A search for
+ * several terms returns the ids holding all of them, largest first, by leapfrogging: each list in turn is asked for
+ * its largest id at or below the current candidate, and the candidate drops to that id until every list agrees on
+ * it. A page of the newest matches therefore decodes a few blocks per list however long the lists are.
+ *
+ * The index only knows ids and terms. Callers add a document's text when it is created and remove the same text
+ * before adding the new one when it changes. Reads share a read lock and changes take the write lock.
+ */
+public class InvertedIndex {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private long postingCount;
+
+    /**
+     * Index text under id. Adding text that is already indexed under id changes nothing.
+     */
+    public void add(int id, String text) {
+        List<String> terms = terms(text);
+        lock.writeLock().lock();
+        try {
+            for (String term : terms) {
+                if (postings.computeIfAbsent(term, t -> new PostingList()).add(id)) postingCount++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the terms of text from id, which must be the text that was added under it.
+     */
+    public void remove(int id, String text) {
+        List<String> terms = terms(text);
+        lock.writeLock().lock();
+        try {
+            for (String term : terms) {
+                PostingList ids = postings.get(term);
+                if (ids == null || !ids.remove(id)) continue;
+                postingCount--;
+                if (ids.size() == 0) postings.remove(term);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find the ids indexed under every one of the terms, largest first.
+     *
+     * @param terms the terms to match, as returned by terms(String)
+     * @param before_id only ids below this one are returned, Integer.MAX_VALUE for no bound
+     * @param limit the most ids returned
+     * @return the matching ids, empty if there are no terms
+     */
+    public int[] search(List<String> terms, int before_id, int limit) {
+        if (terms.isEmpty() || limit < 1) return new int[0];
+        lock.readLock().lock();
+        try {
+            PostingList[] lists = new PostingList[terms.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = postings.get(terms.get(i));
+                if (lists[i] == null) return new int[0];
+            }
+            // Start each round with the shortest list, which makes the biggest jumps
+            Arrays.sort(lists, Comparator.comparingInt(PostingList::size));
+            PostingList.Cursor[] cursors = new PostingList.Cursor[lists.length];
+            for (int i = 0; i < lists.length; i++) cursors[i] = lists[i].cursor();
+
+            int[] ids = new int[Math.min(limit, lists[0].size())];
+            int count = 0;
+            int candidate = before_id - 1;
+            int agreed = 0;
+            int next = 0;
+            while (candidate > 0 && count < ids.length) {
+                int floor = cursors[next].floor(candidate);
+                if (floor == 0) break;
+                if (floor == candidate) {
+                    agreed++;
+                } else {
+                    candidate = floor;
+                    agreed = 1;
+                }
+                if (agreed == cursors.length) {
+                    ids[count++] = candidate;
+                    candidate--;
+                    agreed = 0;
+                }
+                next = (next + 1) % cursors.length;
+            }
+            return count == ids.length ? ids : Arrays.copyOf(ids, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the distinct terms of text in the order they first appear, empty for null or text without letters or
+     * digits
+     */
+    public static List<String> terms(String text) {
+        if (text == null) return List.of();
+        Set<String> terms = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); ) {
+            int codePoint = i < text.length() ? text.codePointAt(i) : ' ';
+            if (Character.isLetterOrDigit(codePoint)) {
+                if (start < 0) start = i;
+            } else if (start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * Remove every id and term.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            postingCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct terms indexed
+     */
+    public int getTermCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of (term, id) pairs indexed
+     */
+    public long getPostingCount() {
+        lock.readLock().lock();
+        try {
+            return postingCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the bytes the compressed posting lists take. Walks every list, so meant for occasional reporting
+     */
+    public long getCompressedBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (PostingList ids : postings.values()) bytes += ids.getCompressedBytes();
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
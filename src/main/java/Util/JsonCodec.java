@@ -0,0 +1,177 @@
+package Util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import Model.Account;
+import Model.Message;
+import Model.MessageBatchResult;
+
+/**
+ * The JsonCodec class reads and writes the JSON bodies of the API's requests and responses.
+ *
+ * Request bodies are read with ObjectReaders built once from a single shared ObjectMapper, so Jackson resolves each
+ * model's deserializer once rather than per request. Responses are written field by field through a JsonGenerator
+ * straight to the response's output stream, so no intermediate String or byte array is built and no bean serializer
+ * is looked up. The field names match what Jackson writes for the models, so clients see the same JSON as before.
+ *
+ * Everything here is thread-safe and shared by all requests.
+ */
+public final class JsonCodec {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final JsonFactory FACTORY = MAPPER.getFactory().copy()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+    private static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    private static final ObjectReader MESSAGE_LIST_READER = MAPPER.readerFor(new TypeReference<List<Message>>(){});
+
+    private JsonCodec() {
+    }
+
+    /**
+     * @param json the UTF-8 bytes of a JSON account
+     * @return the account
+     * @throws IOException will be thrown if the bytes are not a JSON account
+     */
+    public static Account readAccount(byte[] json) throws IOException {
+        return ACCOUNT_READER.readValue(json);
+    }
+
+    /**
+     * @param json the UTF-8 bytes of a JSON message
+     * @return the message
+     * @throws IOException will be thrown if the bytes are not a JSON message
+     */
+    public static Message readMessage(byte[] json) throws IOException {
+        return MESSAGE_READER.readValue(json);
+    }
+
+    /**
+     * @param json the UTF-8 bytes of a JSON array of messages
+     * @return the messages
+     * @throws IOException will be thrown if the bytes are not a JSON array of messages
+     */
+    public static List<Message> readMessages(byte[] json) throws IOException {
+        return MESSAGE_LIST_READER.readValue(json);
+    }
+
+    /**
+     * Write an account as a JSON object. The output stream is flushed but not closed.
+     */
+    public static void writeAccount(OutputStream outputStream, Account account) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(outputStream)) {
+            writeAccount(generator, account);
+        }
+    }
+
+    /**
+     * Write a message as a JSON object. The output stream is flushed but not closed.
+     */
+    public static void writeMessage(OutputStream outputStream, Message message) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(outputStream)) {
+            writeMessage(generator, message);
+        }
+    }
+
+    /**
+     * Write messages as a JSON array. The output stream is flushed but not closed.
+     */
+    public static void writeMessages(OutputStream outputStream, List<Message> messages) throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(outputStream)) {
+            generator.writeStartArray();
+            for (Message message : messages) writeMessage(generator, message);
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Write the results of a batch creation as a JSON array. The output stream is flushed but not closed.
+     */
+    public static void writeBatchResults(OutputStream outputStream, List<MessageBatchResult> results)
+            throws IOException {
+        try (JsonGenerator generator = FACTORY.createGenerator(outputStream)) {
+            generator.writeStartArray();
+            for (MessageBatchResult result : results) {
+                generator.writeStartObject();
+                generator.writeNumberField("index", result.getIndex());
+                generator.writeNumberField("status", result.getStatus());
+                generator.writeFieldName("message");
+                if (result.getMessage() != null) {
+                    writeMessage(generator, result.getMessage());
+                } else {
+                    generator.writeNull();
+                }
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static void writeAccount(JsonGenerator generator, Account account) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("account_id", account.getAccount_id());
+        generator.writeStringField("username", account.getUsername());
+        generator.writeStringField("password", account.getPassword());
+        generator.writeEndObject();
+    }
+
+    private static void writeMessage(JsonGenerator generator, Message message) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("message_id", message.getMessage_id());
+        generator.writeNumberField("posted_by", message.getPosted_by());
+        generator.writeStringField("message_text", message.getMessage_text());
+        generator.writeNumberField("time_posted_epoch", message.getTime_posted_epoch());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes messages to an output stream as the elements of one JSON array, one at a time as they are accepted.
+     * Nothing is written until the first message or finish() arrives, so a request that turns out to be invalid can
+     * still get a plain 400.
+     */
+    public static class MessageArrayWriter implements Consumer<Message> {
+        private final OutputStream outputStream;
+        private JsonGenerator generator;
+
+        public MessageArrayWriter(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        /**
+         * @throws UncheckedIOException will be thrown if the message can not be written
+         */
+        @Override
+        public void accept(Message message) {
+            try {
+                start();
+                writeMessage(generator, message);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Close the array and flush it. The output stream is not closed.
+         */
+        public void finish() throws IOException {
+            start();
+            generator.writeEndArray();
+            generator.close();
+        }
+
+        private void start() throws IOException {
+            if (generator != null) return;
+            generator = FACTORY.createGenerator(outputStream);
+            generator.writeStartArray();
+        }
+    }
+}
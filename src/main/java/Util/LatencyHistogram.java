@@ -0,0 +1,138 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds, bucketed the way HdrHistogram does it: values below 64 get a
+ * bucket each, and every power of two above that is split into 32 equal sub-buckets. Any recorded value is therefore
+ * known to within about 3%, from 1ns up to Long.MAX_VALUE, in a fixed 1888 buckets.
+ *
+ * record() is safe to call from any number of threads at once and never allocates or blocks, so it can sit on a hot
+ * path without distorting what it measures. Reads are not an atomic snapshot: a read racing with record() may see the
+ * new count before the new bucket, which is fine for reporting.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    /**
+     * Index of the bucket holding Long.MAX_VALUE, plus one.
+     */
+    static final int BUCKET_COUNT = indexOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record one latency.
+     *
+     * @param nanos the latency in nanoseconds, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the sum of every value recorded, in nanoseconds
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * @return the largest value recorded, in nanoseconds, 0 if nothing was recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : (double) sum.get() / recorded;
+    }
+
+    /**
+     * @param percentile a percentile from 0 to 100
+     * @return the largest value, in nanoseconds, of the bucket the percentile falls in, capped at the largest value
+     * recorded; 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(highestValueOf(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * @return the number of buckets, every index from 0 up to this is valid for the bucket accessors
+     */
+    public int getBucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * @return the number of values recorded in the bucket
+     */
+    public long getCountAt(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * @return the smallest value, in nanoseconds, that falls in the bucket
+     */
+    public static long lowestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int shift = bucket / HALF_SUB_BUCKETS - 1;
+        long top = bucket % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return top << shift;
+    }
+
+    /**
+     * @return the largest value, in nanoseconds, that falls in the bucket
+     */
+    public static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        if (bucket == BUCKET_COUNT - 1) return Long.MAX_VALUE;
+        return lowestValueOf(bucket + 1) - 1;
+    }
+
+    /**
+     * @return the bucket a non-negative value falls in
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+}
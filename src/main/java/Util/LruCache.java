@@ -0,0 +1,231 @@
+package Util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A bounded, thread-safe, read-through LRU cache with optional expiry.
+ *
+ * The cache is split into segments, each an access-ordered LinkedHashMap behind its own lock, so readers of different
+ * keys rarely contend; eviction is least recently used within a segment. A loader that finds nothing may return null,
+ * and that miss is cached too (for the shorter negative TTL) so repeated lookups of a missing key stay off the
+ * database.
+ *
+ * Loaders run outside the segment lock. If a key is invalidated while its value is being loaded, the loaded value is
+ * returned to the caller but not cached, so an invalidation can never be undone by a slow reader.
+ */
+public class LruCache<K, V> {
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final int maxSize;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param maxSize the most entries kept, 0 disables caching so every get goes to the loader
+     * @param ttlMillis how long a loaded value stays cached, 0 for no expiry
+     * @param negativeTtlMillis how long a null result stays cached, 0 to never cache null results
+     */
+    public LruCache(int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this.maxSize = Math.max(0, maxSize);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        int segmentCount = this.maxSize >= SEGMENTS ? SEGMENTS : 1;
+        int segmentSize = (this.maxSize + segmentCount - 1) / segmentCount;
+        // A generic array can not be created directly, and every element is a Segment<K, V> created just below
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Segment<K, V>[] segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) segments[i] = new Segment<>(segmentSize);
+        this.segments = segments;
+    }
+
+    /**
+     * Get the cached value for key, loading and caching it on a miss.
+     *
+     * @param key the key to look up
+     * @param loader computes the value on a miss, may return null
+     * @return the cached or loaded value, null if the loader found nothing
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        if (maxSize == 0) {
+            missCount.incrementAndGet();
+            return loader.apply(key);
+        }
+
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.nanoTime();
+        segment.lock.lock();
+        try {
+            Entry<V> entry = segment.map.get(key);
+            if (entry != null) {
+                if (entry.expiresAtNanos == 0 || now - entry.expiresAtNanos < 0) {
+                    hitCount.incrementAndGet();
+                    return entry.value;
+                }
+                segment.map.remove(key);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+
+        missCount.incrementAndGet();
+        long invalidationsBefore = invalidations.get();
+        V value = loader.apply(key);
+        long ttl = value != null ? ttlNanos : negativeTtlNanos;
+        if (value == null && ttl == 0) return null;
+
+        segment.lock.lock();
+        try {
+            // Only cache the value if nothing was invalidated while it was loading
+            if (invalidations.get() == invalidationsBefore) {
+                // 0 means "never expires", so a real deadline is kept odd to never collide with it
+                long expiresAt = ttl == 0 ? 0 : (System.nanoTime() + ttl) | 1;
+                segment.map.put(key, new Entry<>(value, expiresAt));
+                evictionCount.addAndGet(segment.trim());
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        return value;
+    }
+
+    /**
+     * Drop the cached value for key, if any. Loads of any key that are in flight when this is called will not be
+     * cached.
+     */
+    public void invalidate(K key) {
+        if (maxSize == 0) return;
+        invalidations.incrementAndGet();
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            segment.map.remove(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Drop every cached value.
+     */
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.map.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+
+    /**
+     * @return the configured maximum number of entries
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of entries currently cached, including expired ones not yet removed
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return how many gets were answered from the cache, including cached null results
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return how many gets had to call the loader
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the fraction of gets answered from the cache, 0 before the first get
+     */
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return how many entries were evicted to stay within the maximum size
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        /**
+         * System.nanoTime() after which the entry is stale, 0 if it never expires.
+         */
+        final long expiresAtNanos;
+
+        Entry(V value, long expiresAtNanos) {
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+        final int maxSize;
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Evict least recently used entries until the segment fits. Called with the lock held.
+         *
+         * @return the number of entries evicted
+         */
+        int trim() {
+            int evicted = 0;
+            Iterator<Map.Entry<K, Entry<V>>> eldest = map.entrySet().iterator();
+            while (map.size() > maxSize && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package Util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A registry of route metrics and of counters and gauges read from elsewhere in the application, rendered in the
+ * Prometheus text exposition format.
+ *
+ * Routes record into RouteMetrics as requests happen. Everything else is registered once as a supplier that is only
+ * read when the metrics are scraped, so the pool, caches and other components keep their own counters and pay
+ * nothing extra per operation. Families whose label values are only known at run time, such as one sample per SQL
+ * text, are registered with a supplier of the labelled values and read the same way.
+ */
+public class Metrics {
+    /**
+     * The content type of the Prometheus text format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /**
+     * Upper bounds, in seconds, of the latency histogram buckets that are exported.
+     */
+    private static final String[] LATENCY_BUCKETS = {"0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05",
+            "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+
+    private final ConcurrentMap<String, RouteMetrics> routes = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Get the metrics of a route, creating them on first use. Look the route up once, when it is registered, rather
+     * than per request.
+     *
+     * @param route the route's method and path, e.g. "GET /messages/{message_id}"
+     */
+    public RouteMetrics route(String route) {
+        return routes.computeIfAbsent(route, RouteMetrics::new);
+    }
+
+    /**
+     * Register a counter, a value that only goes up.
+     *
+     * @param name the metric name, conventionally ending in _total
+     * @param help what the metric counts
+     * @param labels the sample's labels, e.g. state="idle", or an empty string for none
+     * @param value read on every scrape
+     */
+    public void counter(String name, String help, String labels, DoubleSupplier value) {
+        register(name, help, "counter", labels, value);
+    }
+
+    /**
+     * Register a gauge, a value that can go up and down.
+     *
+     * @param name the metric name
+     * @param help what the metric measures
+     * @param labels the sample's labels, e.g. state="idle", or an empty string for none
+     * @param value read on every scrape
+     */
+    public void gauge(String name, String help, String labels, DoubleSupplier value) {
+        register(name, help, "gauge", labels, value);
+    }
+
+    /**
+     * Register a histogram of latencies, exported in seconds.
+     *
+     * @param name the metric name, conventionally ending in _seconds
+     * @param help what the metric measures
+     * @param labels the histogram's labels, or an empty string for none
+     * @param histogram read on every scrape
+     */
+    public void histogram(String name, String help, String labels, LatencyHistogram histogram) {
+        register(name, help, "histogram", (out, family) -> writeHistogram(out, family, labels, histogram));
+    }
+
+    /**
+     * Register a counter with one sample per entry of a map read on every scrape, labelled with the entry's key.
+     *
+     * @param name the metric name, conventionally ending in _total
+     * @param help what the metric counts
+     * @param label the name of the label the map's keys are exported as
+     * @param entries read on every scrape
+     * @param value the counter's value for one entry
+     */
+    public <T> void counters(String name, String help, String label, Supplier<? extends Map<String, T>> entries,
+            ToDoubleFunction<? super T> value) {
+        register(name, help, "counter", (out, family) -> {
+            for (Map.Entry<String, T> entry : entries.get().entrySet()) {
+                writeSample(out, family, label(label, entry.getKey()), value.applyAsDouble(entry.getValue()));
+            }
+        });
+    }
+
+    /**
+     * Register a histogram with one series per entry of a map read on every scrape, labelled with the entry's key.
+     *
+     * @param name the metric name, conventionally ending in _seconds
+     * @param help what the metric measures
+     * @param label the name of the label the map's keys are exported as
+     * @param entries read on every scrape
+     * @param histogram the histogram of one entry
+     */
+    public <T> void histograms(String name, String help, String label, Supplier<? extends Map<String, T>> entries,
+            Function<? super T, LatencyHistogram> histogram) {
+        register(name, help, "histogram", (out, family) -> {
+            for (Map.Entry<String, T> entry : entries.get().entrySet()) {
+                writeHistogram(out, family, label(label, entry.getKey()), histogram.apply(entry.getValue()));
+            }
+        });
+    }
+
+    private void register(String name, String help, String type, String labels, DoubleSupplier value) {
+        register(name, help, type, (out, family) -> writeSample(out, family, labels, value.getAsDouble()));
+    }
+
+    private void register(String name, String help, String type, Source source) {
+        families.computeIfAbsent(name, key -> new Family(help, type)).sources.add(source);
+    }
+
+    /**
+     * @return every metric in the Prometheus text format
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "http_requests_total", "Requests handled, by route and response status code.", "counter");
+        for (RouteMetrics route : routes.values()) {
+            for (int status = 0; status < route.getStatusCodeLimit(); status++) {
+                long count = route.getStatusCount(status);
+                if (count == 0) continue;
+                out.append("http_requests_total{route=\"").append(escape(route.getRoute())).append("\",status=\"")
+                        .append(status).append("\"} ").append(count).append('\n');
+            }
+        }
+
+        header(out, "http_request_duration_seconds", "Time spent in the route's handler.", "histogram");
+        for (RouteMetrics route : routes.values()) {
+            writeHistogram(out, "http_request_duration_seconds", label("route", route.getRoute()), route.getLatency());
+        }
+
+        for (Map.Entry<String, Family> family : families.entrySet()) {
+            header(out, family.getKey(), family.getValue().help, family.getValue().type);
+            for (Source source : family.getValue().sources) source.write(out, family.getKey());
+        }
+        return out.toString();
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    /**
+     * Write a histogram's cumulative buckets, sum and count, converting from nanoseconds to seconds.
+     */
+    private static void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        int bucket = 0;
+        for (String bound : LATENCY_BUCKETS) {
+            long boundNanos = (long) (Double.parseDouble(bound) * 1e9);
+            while (bucket < histogram.getBucketCount() && LatencyHistogram.highestValueOf(bucket) <= boundNanos) {
+                cumulative += histogram.getCountAt(bucket++);
+            }
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(bound).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        long count = histogram.getCount();
+        out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(count).append('\n');
+        String braced = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braced).append(' ').append(histogram.getSum() / 1e9).append('\n');
+        out.append(name).append("_count").append(braced).append(' ').append(count).append('\n');
+    }
+
+    private static String label(String name, String value) {
+        return name + "=\"" + escape(value) + "\"";
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+
+    /**
+     * Escape a string for use as a label value.
+     */
+    public static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Writes the samples of one registration, under the family's name.
+     */
+    private interface Source {
+        void write(StringBuilder out, String name);
+    }
+
+    private static final class Family {
+        final String help;
+        final String type;
+        final CopyOnWriteArrayList<Source> sources = new CopyOnWriteArrayList<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * A set of positive ints kept sorted and compressed, for the message ids of one term of an InvertedIndex.
+ *
+ * The ids are split into blocks of about BLOCK_SIZE. Each block keeps its first id as is and the rest as the
+ * differences between neighbours, written as variable-length integers of seven bits per byte, so a run of close ids
+ * costs a byte or two each instead of four. The first and last id of every block are also kept uncompressed, so the
+ * block an id belongs in is found by binary search and only that block is decoded.
+ *
+ * Adding an id larger than every id already held, which is what happens when ids are handed out in increasing order,
+ * appends to the last block. Anything else decodes the block, changes it and encodes it again; a block that grows to
+ * twice BLOCK_SIZE is split in two.
+ *
+ * Not thread safe: callers that share a list guard it themselves.
+ */
+public class PostingList {
+    /**
+     * How many ids a block holds before appending starts the next one.
+     */
+    static final int BLOCK_SIZE = 128;
+
+    private int[] firstIds = new int[1];
+    private int[] lastIds = new int[1];
+    private int[] counts = new int[1];
+    private byte[][] blocks = new byte[1][];
+    private int[] blockBytes = new int[1];
+    private int blockCount;
+    private int size;
+
+    /**
+     * @param id the id to add, greater than 0
+     * @return false if the id was already in the list
+     */
+    public boolean add(int id) {
+        if (id < 1) throw new IllegalArgumentException("id must be positive: " + id);
+        int last = blockCount - 1;
+        if (last >= 0 && id > lastIds[last] && counts[last] < BLOCK_SIZE) {
+            append(last, id - lastIds[last]);
+            lastIds[last] = id;
+            counts[last]++;
+            size++;
+            return true;
+        }
+        if (last < 0 || id > lastIds[last]) {
+            insertBlock(blockCount, new int[] {id}, 1);
+            size++;
+            return true;
+        }
+
+        int block = Math.max(0, blockOf(id));
+        int[] ids = decode(block, new int[counts[block] + 1]);
+        int count = counts[block];
+        int index = Arrays.binarySearch(ids, 0, count, id);
+        if (index >= 0) return false;
+        index = -index - 1;
+        System.arraycopy(ids, index, ids, index + 1, count - index);
+        ids[index] = id;
+        count++;
+        size++;
+        if (count < 2 * BLOCK_SIZE) {
+            encode(block, ids, 0, count);
+        } else {
+            int half = count / 2;
+            encode(block, ids, 0, half);
+            insertBlock(block + 1, Arrays.copyOfRange(ids, half, count), count - half);
+        }
+        return true;
+    }
+
+    /**
+     * @return false if the id was not in the list
+     */
+    public boolean remove(int id) {
+        int block = blockOf(id);
+        if (block < 0 || id > lastIds[block]) return false;
+        int[] ids = decode(block, new int[counts[block]]);
+        int count = counts[block];
+        int index = Arrays.binarySearch(ids, 0, count, id);
+        if (index < 0) return false;
+        System.arraycopy(ids, index + 1, ids, index, count - index - 1);
+        count--;
+        size--;
+        if (count == 0) {
+            removeBlock(block);
+        } else {
+            encode(block, ids, 0, count);
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of ids
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes the compressed blocks take, not counting the per-block arrays
+     */
+    public long getCompressedBytes() {
+        long bytes = 0;
+        for (int block = 0; block < blockCount; block++) bytes += blockBytes[block];
+        return bytes;
+    }
+
+    /**
+     * @return a cursor for walking the list, valid until the list is next changed
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Looks ids up in the list, keeping the block it decoded last so that a run of lookups in the same block decodes
+     * it once.
+     */
+    public final class Cursor {
+        private int[] decoded = new int[BLOCK_SIZE];
+        private int decodedBlock = -1;
+
+        /**
+         * @return the largest id in the list that is at most id, or 0 if there is none
+         */
+        public int floor(int id) {
+            int block = blockOf(id);
+            if (block < 0) return 0;
+            if (id >= lastIds[block]) return lastIds[block];
+            if (block != decodedBlock) {
+                if (decoded.length < counts[block]) decoded = new int[counts[block]];
+                decode(block, decoded);
+                decodedBlock = block;
+            }
+            int index = Arrays.binarySearch(decoded, 0, counts[block], id);
+            return index >= 0 ? decoded[index] : decoded[-index - 2];
+        }
+    }
+
+    /**
+     * @return the last block whose first id is at most id, or -1 if there is none
+     */
+    private int blockOf(int id) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (firstIds[middle] <= id) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Decode a block into ids, which must have room for all of it.
+     */
+    private int[] decode(int block, int[] ids) {
+        byte[] bytes = blocks[block];
+        int id = firstIds[block];
+        ids[0] = id;
+        int position = 0;
+        for (int i = 1; i < counts[block]; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                delta |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            id += delta;
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    private void encode(int block, int[] ids, int from, int to) {
+        firstIds[block] = ids[from];
+        lastIds[block] = ids[to - 1];
+        counts[block] = to - from;
+        blockBytes[block] = 0;
+        if (blocks[block] == null) blocks[block] = new byte[16];
+        for (int i = from + 1; i < to; i++) append(block, ids[i] - ids[i - 1]);
+    }
+
+    private void append(int block, int delta) {
+        byte[] bytes = blocks[block];
+        int position = blockBytes[block];
+        if (position + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(16, bytes.length * 2));
+            blocks[block] = bytes;
+        }
+        while ((delta & ~0x7f) != 0) {
+            bytes[position++] = (byte) (delta & 0x7f | 0x80);
+            delta >>>= 7;
+        }
+        bytes[position++] = (byte) delta;
+        blockBytes[block] = position;
+    }
+
+    private void insertBlock(int block, int[] ids, int count) {
+        if (blockCount == firstIds.length) {
+            int capacity = blockCount * 2;
+            firstIds = Arrays.copyOf(firstIds, capacity);
+            lastIds = Arrays.copyOf(lastIds, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            blocks = Arrays.copyOf(blocks, capacity);
+            blockBytes = Arrays.copyOf(blockBytes, capacity);
+        }
+        int moved = blockCount - block;
+        System.arraycopy(firstIds, block, firstIds, block + 1, moved);
+        System.arraycopy(lastIds, block, lastIds, block + 1, moved);
+        System.arraycopy(counts, block, counts, block + 1, moved);
+        System.arraycopy(blocks, block, blocks, block + 1, moved);
+        System.arraycopy(blockBytes, block, blockBytes, block + 1, moved);
+        blocks[block] = null;
+        blockCount++;
+        encode(block, ids, 0, count);
+    }
+
+    private void removeBlock(int block) {
+        int moved = blockCount - block - 1;
+        System.arraycopy(firstIds, block + 1, firstIds, block, moved);
+        System.arraycopy(lastIds, block + 1, lastIds, block, moved);
+        System.arraycopy(counts, block + 1, counts, block, moved);
+        System.arraycopy(blocks, block + 1, blocks, block, moved);
+        System.arraycopy(blockBytes, block + 1, blockBytes, block, moved);
+        blockCount--;
+        blocks[blockCount] = null;
+    }
+}
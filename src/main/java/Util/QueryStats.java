@@ -0,0 +1,227 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings of the JDBC work done through ConnectionUtil: how long borrowers waited for a connection, and, for every SQL
+ * text, how long it took to execute, how long its rows took to fetch and how long the caller spent iterating them.
+ *
+ * Connections are instrumented by wrap(), which puts an InstrumentedConnection in front of the pooled connection.
+ * Iteration runs from executeQuery() returning until the caller has read the last row or closed the result set, the
+ * statement or the connection, and so includes the caller's own row mapping; the fetch time is the part of it spent
+ * inside ResultSet.next(). Iteration minus fetch is therefore the time spent mapping rows.
+ *
+ * A statement whose execute and fetch time together reach the slow query threshold is logged along with H2's EXPLAIN
+ * plan for it. The plan is looked up the first time a statement is slow and re-used after that, so a statement that is
+ * slow on every call does not run EXPLAIN on every call.
+ */
+public class QueryStats {
+    /**
+     * Statements H2 can EXPLAIN, by their first keyword.
+     */
+    private static final String[] EXPLAINABLE = {"SELECT", "INSERT", "UPDATE", "DELETE", "MERGE", "WITH", "TABLE"};
+
+    private final long slowQueryNanos;
+    private final LatencyHistogram acquire = new LatencyHistogram();
+    private final ConcurrentMap<String, Timings> timings = new ConcurrentHashMap<>();
+    private final AtomicLong slowQueryCount = new AtomicLong();
+
+    /**
+     * @param slowQueryMillis statements taking at least this long are logged with their plan, 0 disables the log
+     */
+    public QueryStats(long slowQueryMillis) {
+        this.slowQueryNanos = slowQueryMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(slowQueryMillis) : 0;
+    }
+
+    /**
+     * Instrument a borrowed connection.
+     *
+     * @param connection the connection to wrap
+     * @param acquireNanos how long it took to borrow
+     * @return a connection whose statements are timed, closing it closes the wrapped connection
+     */
+    public Connection wrap(Connection connection, long acquireNanos) {
+        acquire.record(acquireNanos);
+        return new InstrumentedConnection(this, connection).proxy;
+    }
+
+    Timings timings(String sql) {
+        Timings sqlTimings = timings.get(sql);
+        return sqlTimings != null ? sqlTimings : timings.computeIfAbsent(sql, Timings::new);
+    }
+
+    /**
+     * Called once a statement is done with: after executing an update, or once its result set has been iterated.
+     *
+     * @param connection the connection to run EXPLAIN on if the statement was slow
+     * @param parameters the statement's parameters, by index from 1, or null for a plain Statement
+     */
+    void finish(Timings sqlTimings, long executeNanos, long fetchNanos, long rows, Connection connection,
+            Object[] parameters) {
+        if (slowQueryNanos == 0 || executeNanos + fetchNanos < slowQueryNanos) return;
+        slowQueryCount.incrementAndGet();
+        sqlTimings.slow.incrementAndGet();
+        String plan = sqlTimings.plan;
+        if (plan == null) {
+            plan = explain(connection, sqlTimings.sql, parameters);
+            sqlTimings.plan = plan;
+        }
+        System.out.println("Slow query (" + TimeUnit.NANOSECONDS.toMillis(executeNanos + fetchNanos) + "ms: execute "
+                + TimeUnit.NANOSECONDS.toMillis(executeNanos) + "ms, fetch " + TimeUnit.NANOSECONDS.toMillis(fetchNanos)
+                + "ms, " + rows + " rows): " + sqlTimings.sql + "\n" + plan);
+    }
+
+    /**
+     * Ask H2 for the plan of a statement, bound to the parameters it was run with.
+     */
+    private static String explain(Connection connection, String sql, Object[] parameters) {
+        if (!isExplainable(sql)) return "No plan for this statement";
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+            if (parameters != null) {
+                int count = explain.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= count; i++) {
+                    explain.setObject(i, i < parameters.length ? parameters[i] : null);
+                }
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet resultSet = explain.executeQuery()) {
+                while (resultSet.next()) plan.append(resultSet.getString(1)).append('\n');
+            }
+            return plan.toString().trim();
+        } catch (SQLException e) {
+            return "EXPLAIN failed: " + e.getMessage();
+        }
+    }
+
+    private static boolean isExplainable(String sql) {
+        String text = sql.trim();
+        for (String keyword : EXPLAINABLE) {
+            if (text.regionMatches(true, 0, keyword, 0, keyword.length())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return how long borrowers waited for a connection, re-entrant borrows included
+     */
+    public LatencyHistogram getAcquire() {
+        return acquire;
+    }
+
+    /**
+     * @return timings by SQL text
+     */
+    public Map<String, Timings> getTimings() {
+        return Collections.unmodifiableMap(timings);
+    }
+
+    /**
+     * @return how many statements reached the slow query threshold
+     */
+    public long getSlowQueryCount() {
+        return slowQueryCount.get();
+    }
+
+    /**
+     * Timings for one SQL text, summed over every connection.
+     */
+    public static class Timings {
+        private final String sql;
+        private final LatencyHistogram execute = new LatencyHistogram();
+        private final LatencyHistogram iterate = new LatencyHistogram();
+        private final AtomicLong fetchNanos = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong slow = new AtomicLong();
+        private volatile String plan;
+
+        Timings(String sql) {
+            this.sql = sql;
+        }
+
+        void recordExecute(long nanos) {
+            execute.record(nanos);
+        }
+
+        void recordIterate(long nanos, long fetch, long rowCount) {
+            iterate.record(nanos);
+            fetchNanos.addAndGet(fetch);
+            rows.addAndGet(rowCount);
+        }
+
+        void recordError() {
+            errors.incrementAndGet();
+        }
+
+        /**
+         * @return the SQL text
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return how long each execution took, up to the statement returning its result set or update count
+         */
+        public LatencyHistogram getExecute() {
+            return execute;
+        }
+
+        /**
+         * @return how long each result set was iterated for, the caller's row mapping included
+         */
+        public LatencyHistogram getIterate() {
+            return iterate;
+        }
+
+        /**
+         * @return the total time spent inside ResultSet.next(), in nanoseconds
+         */
+        public long getFetchNanos() {
+            return fetchNanos.get();
+        }
+
+        /**
+         * @return the total number of rows read
+         */
+        public long getRows() {
+            return rows.get();
+        }
+
+        /**
+         * @return how many executions threw an SQLException
+         */
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * @return how many executions reached the slow query threshold
+         */
+        public long getSlowCount() {
+            return slow.get();
+        }
+
+        /**
+         * @return the EXPLAIN plan logged the first time the statement was slow, or null
+         */
+        public String getPlan() {
+            return plan;
+        }
+
+        @Override
+        public String toString() {
+            return "Timings{executions=" + execute.getCount() + ", rows=" + getRows() + ", errors=" + getErrors()
+                    + ", slow=" + getSlowCount() + '}';
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import Model.Message;
+
+/**
+ * A bounded, thread-safe cache of each account's newest messages, for answering the first pages of an account's
+ * listing without going to the database.
+ *
+ * Each cached account holds a ring buffer of up to capacity messages in newest first order: time_posted_epoch
+ * descending, then message_id ascending, the order of the sort=latest listing. The buffer always holds a prefix of
+ * the account's messages in that order, and knows whether it holds all of them. A new message usually goes in at the
+ * head, which moves the head back one slot and, when the buffer is full, drops the oldest. Messages are kept in the
+ * buffer as they are created, updated and deleted rather than invalidated, so a busy account stays cached.
+ *
+ * A page is answered from the buffer when it lies wholly inside it, or anywhere once the buffer holds every message
+ * of the account; otherwise the caller falls back to the database. A caller that asks for one message more than a
+ * page, to learn whether there is a next page, needs capacity to exceed its page size by one. An account is loaded
+ * on a miss only for a first page, since a deep page would not fit anyway. Accounts are split into segments, each an
+ * access-ordered LinkedHashMap behind its own lock, and the least recently used account of a segment is evicted once
+ * it holds more than its share of maxAccounts.
+ *
+ * The loader runs outside the segment lock. If any message of the segment changes while an account is loading, the
+ * loaded messages are still returned but not cached, so a slow load can never undo a change.
+ */
+public class RecentMessagesCache {
+    private static final int SEGMENTS = 16;
+    /**
+     * The newest first order of the buffers, that of MessageStore.getLatestMessagesFromAccountIdBefore.
+     */
+    private static final Comparator<Message> NEWEST_FIRST = Comparator
+            .comparingLong(Message::getTime_posted_epoch).reversed()
+            .thenComparingInt(Message::getMessage_id);
+
+    private final int capacity;
+    private final int maxAccounts;
+    private final IntFunction<List<Message>> loader;
+    private final Segment[] segments;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param capacity the most messages kept per account, 0 disables the cache
+     * @param maxAccounts the most accounts kept, 0 disables the cache
+     * @param loader returns an account's newest capacity + 1 messages in newest first order, or fewer if it has no
+     * more
+     */
+    public RecentMessagesCache(int capacity, int maxAccounts, IntFunction<List<Message>> loader) {
+        this.capacity = Math.max(0, capacity);
+        this.maxAccounts = Math.max(0, maxAccounts);
+        this.loader = loader;
+        int segmentCount = this.maxAccounts >= SEGMENTS ? SEGMENTS : 1;
+        int segmentSize = (this.maxAccounts + segmentCount - 1) / segmentCount;
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) segments[i] = new Segment(segmentSize);
+    }
+
+    /**
+     * Get a page of an account's messages newest first, those posted before before or at before with a message id
+     * greater than after_id.
+     *
+     * @param before Long.MAX_VALUE for the first page
+     * @param after_id Integer.MAX_VALUE for the first page
+     * @param limit the most messages returned
+     * @return the page, or null if it can not be answered from memory
+     */
+    public List<Message> getLatest(int account_id, long before, int after_id, int limit) {
+        boolean firstPage = before == Long.MAX_VALUE && after_id == Integer.MAX_VALUE;
+        return get(account_id, firstPage, ring -> ring.latest(before, after_id, limit));
+    }
+
+    /**
+     * Get a page of an account's messages in message id order, those with a message id greater than after_id.
+     * Only answered from memory when every message of the account is cached.
+     *
+     * @param after_id 0 for the first page
+     * @param limit the most messages returned
+     * @return the page, or null if it can not be answered from memory
+     */
+    public List<Message> getAfterId(int account_id, int after_id, int limit) {
+        return get(account_id, after_id == 0, ring -> ring.afterId(after_id, limit));
+    }
+
+    /**
+     * Record a newly created message.
+     */
+    public void inserted(Message message) {
+        change(message.getPosted_by(), ring -> ring.insert(message));
+    }
+
+    /**
+     * Record the new text of an updated message.
+     */
+    public void updated(Message message) {
+        change(message.getPosted_by(), ring -> ring.replace(message));
+    }
+
+    /**
+     * Record a deleted message.
+     */
+    public void deleted(Message message) {
+        change(message.getPosted_by(), ring -> ring.remove(message.getMessage_id()));
+    }
+
+    private List<Message> get(int account_id, boolean loadOnMiss, Function<Ring, List<Message>> page) {
+        if (capacity == 0 || maxAccounts == 0) return null;
+        Segment segment = segmentFor(account_id);
+        long changesBefore;
+        segment.lock.lock();
+        try {
+            Ring ring = segment.map.get(account_id);
+            if (ring != null) {
+                List<Message> messages = page.apply(ring);
+                if (messages != null) {
+                    hitCount.incrementAndGet();
+                    return messages;
+                }
+            }
+            missCount.incrementAndGet();
+            if (ring != null || !loadOnMiss) return null;
+            changesBefore = segment.changes;
+        } finally {
+            segment.lock.unlock();
+        }
+
+        Ring ring = new Ring(capacity, loader.apply(account_id));
+        // Read the page before the ring is shared, after which it may only be read under the lock
+        List<Message> messages = page.apply(ring);
+        segment.lock.lock();
+        try {
+            // Only cache the messages if none of the segment's accounts changed while they were loading
+            if (segment.changes == changesBefore && !segment.map.containsKey(account_id)) {
+                segment.map.put(account_id, ring);
+                evictionCount.addAndGet(segment.trim());
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        return messages;
+    }
+
+    private void change(int account_id, Consumer<Ring> change) {
+        if (capacity == 0 || maxAccounts == 0) return;
+        Segment segment = segmentFor(account_id);
+        segment.lock.lock();
+        try {
+            segment.changes++;
+            Ring ring = segment.map.get(account_id);
+            if (ring == null) return;
+            change.accept(ring);
+            if (ring.isStale()) segment.map.remove(account_id);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    private Segment segmentFor(int account_id) {
+        int hash = account_id ^ account_id >>> 16;
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+
+    /**
+     * @return the number of accounts currently cached
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.map.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return how many pages were answered from memory
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return how many pages were left to the database, whether or not the account was cached
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return how many accounts were evicted to stay within maxAccounts
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * The newest messages of one account in newest first order, in a circular array starting at head.
+     */
+    static final class Ring {
+        private final Message[] messages;
+        private int head;
+        private int size;
+        /**
+         * Whether the ring holds every message of the account, rather than only its newest.
+         */
+        private boolean complete;
+
+        /**
+         * @param newest the account's newest messages in newest first order; more than capacity means the account
+         * has messages that do not fit
+         */
+        Ring(int capacity, List<Message> newest) {
+            messages = new Message[capacity];
+            size = Math.min(capacity, newest.size());
+            for (int i = 0; i < size; i++) messages[i] = newest.get(i);
+            complete = newest.size() <= capacity;
+        }
+
+        private Message get(int index) {
+            return messages[(head + index) % messages.length];
+        }
+
+        private void set(int index, Message message) {
+            messages[(head + index) % messages.length] = message;
+        }
+
+        /**
+         * @return the messages after the cursor, or null if they do not all fit in the ring
+         */
+        List<Message> latest(long before, int after_id, int limit) {
+            // Binary search for the first message past the cursor
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                Message message = get(middle);
+                long time = message.getTime_posted_epoch();
+                if (time < before || time == before && message.getMessage_id() > after_id) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            int count = Math.min(limit, size - low);
+            if (count < limit && !complete) return null;
+            List<Message> page = new ArrayList<>(count);
+            for (int i = low; i < low + count; i++) page.add(get(i));
+            return page;
+        }
+
+        /**
+         * @return the messages with a message id greater than after_id in message id order, or null if the ring does
+         * not hold every message of the account
+         */
+        List<Message> afterId(int after_id, int limit) {
+            if (!complete) return null;
+            List<Message> page = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (get(i).getMessage_id() > after_id) page.add(get(i));
+            }
+            page.sort(Comparator.comparingInt(Message::getMessage_id));
+            return page.size() <= limit ? page : new ArrayList<>(page.subList(0, limit));
+        }
+
+        /**
+         * Put a new message in its place, dropping the oldest if the ring is full. A message older than everything
+         * in an incomplete ring is left out, since the messages it would follow are not known. A message already in
+         * the ring is left where it is: a ring loaded after the message was stored, but before it was recorded as
+         * inserted, holds it already.
+         */
+        void insert(Message message) {
+            int index = 0;
+            while (index < size && NEWEST_FIRST.compare(get(index), message) < 0) index++;
+            if (index < size && get(index).getMessage_id() == message.getMessage_id()) return;
+            if (index == size && !complete) return;
+            if (size == messages.length) {
+                complete = false;
+                if (index == size) return;
+                size--;
+            }
+            if (index == 0) {
+                head = (head + messages.length - 1) % messages.length;
+            } else {
+                for (int i = size; i > index; i--) set(i, get(i - 1));
+            }
+            set(index, message);
+            size++;
+        }
+
+        /**
+         * Replace a message with its updated version, if it is in the ring. An update never changes
+         * time_posted_epoch, so the message keeps its place.
+         */
+        void replace(Message message) {
+            for (int i = 0; i < size; i++) {
+                if (get(i).getMessage_id() == message.getMessage_id()) {
+                    set(i, message);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Take a message out of the ring, if it is there.
+         */
+        void remove(int message_id) {
+            for (int i = 0; i < size; i++) {
+                if (get(i).getMessage_id() != message_id) continue;
+                for (int j = i; j < size - 1; j++) set(j, get(j + 1));
+                size--;
+                set(size, null);
+                return;
+            }
+        }
+
+        /**
+         * @return whether deletes have left the ring with half its capacity or less while the account has messages
+         * it does not hold, so few pages fit and it is better reloaded
+         */
+        boolean isStale() {
+            return !complete && size <= messages.length / 2;
+        }
+    }
+
+    private static final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<Integer, Ring> map = new LinkedHashMap<>(16, 0.75f, true);
+        final int maxSize;
+        /**
+         * Counts the changes recorded against the segment's accounts, cached or not, so a load can tell whether it
+         * raced with one.
+         */
+        long changes;
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Evict least recently used accounts until the segment fits. Called with the lock held.
+         *
+         * @return the number of accounts evicted
+         */
+        int trim() {
+            int evicted = 0;
+            Iterator<Map.Entry<Integer, Ring>> eldest = map.entrySet().iterator();
+            while (map.size() > maxSize && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package Util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A bounded, thread-safe cache of serialized response bodies, so that a listing requested again before anything it
+ * shows has changed is written from bytes already encoded, and already gzipped, instead of being read and encoded
+ * again.
+ *
+ * Each response is cached under its route and parameters and stamped with the version tag it was built at, such as
+ * one from Versions. A lookup passes the current tag, and a response stamped with any other tag is dropped rather
+ * than returned, so a write invalidates every response it affects by bumping their version, without the cache
+ * having to know which keys those are. The tag must be taken before the response is built: a response built while a
+ * write was in flight is then stamped with a tag that is already out of date, and never served.
+ *
+ * The cache holds at most maxBytes of bodies, gzipped copies included, evicting the least recently used responses
+ * first. One lock guards the map, and is held only to look up, add or evict entries, never to encode.
+ */
+public class ResponseCache {
+    /**
+     * Bodies shorter than this are not worth gzipping, the same threshold Javalin compresses responses at.
+     */
+    public static final int GZIP_MIN_BYTES = 1500;
+
+    private final long maxBytes;
+    private final boolean gzip;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Response> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param maxBytes the most bytes of bodies kept, 0 disables caching
+     * @param gzip whether to keep a gzipped copy of every body of at least GZIP_MIN_BYTES
+     */
+    public ResponseCache(long maxBytes, boolean gzip) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.gzip = gzip;
+    }
+
+    /**
+     * @return false if the cache keeps nothing, in which case get always misses and put does nothing
+     */
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Get the cached response for key if it was built at the current version.
+     *
+     * @param tag the current version tag of what the response shows
+     * @return the response, or null if there is none for this version
+     */
+    public Response get(String key, String tag) {
+        if (maxBytes == 0) return null;
+        lock.lock();
+        try {
+            Response response = map.get(key);
+            if (response != null) {
+                if (response.tag.equals(tag)) {
+                    hitCount.incrementAndGet();
+                    return response;
+                }
+                map.remove(key);
+                bytes -= response.size();
+            }
+        } finally {
+            lock.unlock();
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Build a response from an encoded body, gzipping it if the cache keeps gzipped copies, and cache it under key.
+     * A body larger than the whole cache is returned without being cached.
+     *
+     * @param tag the version tag taken before the body was built
+     * @param body the encoded body
+     * @param headers response headers that go with the body, such as the next page's cursor, may be empty
+     * @return the response, to be written to the client that asked for it
+     */
+    public Response put(String key, String tag, byte[] body, Map<String, String> headers) {
+        byte[] gzipped = gzip && maxBytes > 0 && body.length >= GZIP_MIN_BYTES ? gzip(body) : null;
+        Response response = new Response(tag, body, gzipped, headers);
+        if (maxBytes == 0 || response.size() > maxBytes) return response;
+        lock.lock();
+        try {
+            Response replaced = map.put(key, response);
+            if (replaced != null) bytes -= replaced.size();
+            bytes += response.size();
+            Iterator<Response> eldest = map.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().size();
+                eldest.remove();
+                evictionCount.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return response;
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(gzipped)) {
+            gzipOutputStream.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return gzipped.toByteArray();
+    }
+
+    /**
+     * @return the number of responses currently cached
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return map.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the bytes of bodies currently cached, gzipped copies included
+     */
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how many gets found a response at the current version
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return how many gets found no response, or one at an older version
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return how many responses were evicted to stay within the maximum size
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * A cached response: the encoded body, its gzipped copy if there is one, and the headers that go with it.
+     */
+    public static final class Response {
+        private final String tag;
+        private final byte[] body;
+        private final byte[] gzipped;
+        private final Map<String, String> headers;
+
+        Response(String tag, byte[] body, byte[] gzipped, Map<String, String> headers) {
+            this.tag = tag;
+            this.body = body;
+            this.gzipped = gzipped;
+            this.headers = headers;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the gzipped body, null if the body was not gzipped
+         */
+        public byte[] getGzipped() {
+            return gzipped;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        private long size() {
+            return body.length + (gzipped != null ? gzipped.length : 0);
+        }
+    }
+}
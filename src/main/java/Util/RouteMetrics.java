@@ -0,0 +1,64 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Request counts by status code, and a latency histogram, for one route. Recording is lock-free and allocates
+ * nothing, so it can wrap every request.
+ */
+public class RouteMetrics {
+    /**
+     * Status codes are counted in a flat array indexed by code; anything outside 100-599 is counted as 0.
+     */
+    private static final int STATUS_CODES = 600;
+
+    private final String route;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLongArray statusCounts = new AtomicLongArray(STATUS_CODES);
+
+    /**
+     * @param route the route's method and path, as registered, e.g. "GET /messages/{message_id}"
+     */
+    public RouteMetrics(String route) {
+        this.route = route;
+    }
+
+    /**
+     * Record one handled request.
+     *
+     * @param status the response status code
+     * @param nanos how long the request took to handle
+     */
+    public void record(int status, long nanos) {
+        statusCounts.incrementAndGet(status >= 100 && status < STATUS_CODES ? status : 0);
+        latency.record(nanos);
+    }
+
+    /**
+     * @return the route's method and path
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * @return the latencies recorded for the route
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return how many requests got the status code, with 0 counting every code outside 100-599
+     */
+    public long getStatusCount(int status) {
+        return status >= 0 && status < STATUS_CODES ? statusCounts.get(status) : 0;
+    }
+
+    /**
+     * @return one past the largest status code getStatusCount accepts
+     */
+    public int getStatusCodeLimit() {
+        return STATUS_CODES;
+    }
+}
@@ -0,0 +1,89 @@
+package Util;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of distinct ints kept in ascending order.
+ *
+ * Adding a value larger than every value already held, which is what happens when ids are handed out in increasing
+ * order, is an append. Anything else is found by binary search and costs an array shift.
+ *
+ * Not thread safe: callers that share a list guard it themselves.
+ */
+public class SortedIntList {
+    private int[] values;
+    private int size;
+
+    public SortedIntList() {
+        this(8);
+    }
+
+    /**
+     * @param initialCapacity how many values the list holds before it first grows
+     */
+    public SortedIntList(int initialCapacity) {
+        values = new int[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * @return false if the value was already in the list
+     */
+    public boolean add(int value) {
+        int index;
+        if (size == 0 || values[size - 1] < value) {
+            index = size;
+        } else {
+            int found = Arrays.binarySearch(values, 0, size, value);
+            if (found >= 0) return false;
+            index = -found - 1;
+        }
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return false if the value was not in the list
+     */
+    public boolean remove(int value) {
+        int index = Arrays.binarySearch(values, 0, size, value);
+        if (index < 0) return false;
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * @return the value at index, counting from the smallest
+     */
+    public int get(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        return values[index];
+    }
+
+    /**
+     * @return the index of the first value greater than value, or size() if there is none
+     */
+    public int indexAfter(int value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,249 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An LRU cache of prepared statements belonging to one physical connection, keyed by SQL text and generated-keys
+ * mode.
+ *
+ * A statement is checked out of the cache when it is prepared and checked back in when the caller closes it or when
+ * the connection goes back to the pool, whichever comes first. Preparing the same SQL twice before either happens
+ * gives the second caller its own statement, so an open ResultSet is never reset under the caller that is reading it.
+ * Each checkout hands out a new proxy that stops working once it is checked in, so a caller that keeps a statement
+ * after closing it can neither use nor close it again once someone else has checked the same statement out.
+ *
+ * Only the thread holding the connection touches its cache, so the cache itself is not synchronized.
+ */
+public class StatementCache {
+    private final Connection physical;
+    private final int maxSize;
+    private final ConcurrentMap<String, Counters> counters;
+    private final LinkedHashMap<Key, CachedStatement> available;
+    private final List<CachedStatement> checkedOut = new ArrayList<>();
+
+    /**
+     * @param physical the connection statements are prepared on
+     * @param maxSize the most statements kept per connection
+     * @param counters hit and miss counters by SQL text, shared by every connection of the pool
+     */
+    StatementCache(Connection physical, int maxSize, ConcurrentMap<String, Counters> counters) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.counters = counters;
+        this.available = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Check a statement out of the cache, preparing it on a miss.
+     *
+     * @param owner the pooled connection the statement should report from getConnection()
+     * @param sql the SQL text
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @return a statement whose close() returns it to the cache
+     */
+    PreparedStatement prepare(Connection owner, String sql, int autoGeneratedKeys) throws SQLException {
+        Counters sqlCounters = counters.computeIfAbsent(sql, text -> new Counters());
+        Key key = new Key(sql, autoGeneratedKeys);
+        CachedStatement cached = available.remove(key);
+        if (cached != null && !cached.physical.isClosed()) {
+            sqlCounters.hits.incrementAndGet();
+        } else {
+            sqlCounters.misses.incrementAndGet();
+            PreparedStatement statement = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS
+                    ? physical.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                    : physical.prepareStatement(sql);
+            cached = new CachedStatement(key, statement);
+        }
+        Checkout checkout = new Checkout(cached, owner);
+        cached.current = checkout;
+        checkedOut.add(cached);
+        return checkout.proxy;
+    }
+
+    /**
+     * Return every statement still checked out. Called when the connection goes back to the pool.
+     */
+    void checkInAll() {
+        for (int i = checkedOut.size() - 1; i >= 0; i--) {
+            checkIn(checkedOut.get(i));
+        }
+    }
+
+    /**
+     * Close and forget every cached statement.
+     */
+    void closeAll() {
+        checkedOut.clear();
+        for (CachedStatement cached : available.values()) closeQuietly(cached.physical);
+        available.clear();
+    }
+
+    private void checkIn(CachedStatement cached) {
+        if (cached.current == null) return;
+        cached.current.closed = true;
+        cached.current = null;
+        checkedOut.remove(cached);
+        try {
+            if (cached.physical.isClosed()) return;
+            ResultSet resultSet = cached.physical.getResultSet();
+            if (resultSet != null) resultSet.close();
+            cached.physical.clearParameters();
+            cached.physical.clearBatch();
+        } catch (SQLException e) {
+            closeQuietly(cached.physical);
+            return;
+        }
+
+        CachedStatement previous = available.put(cached.key, cached);
+        if (previous != null && previous != cached) closeQuietly(previous.physical);
+        if (available.size() > maxSize) {
+            Iterator<CachedStatement> eldest = available.values().iterator();
+            CachedStatement evicted = eldest.next();
+            eldest.remove();
+            counters.computeIfAbsent(evicted.key.sql, text -> new Counters()).evictions.incrementAndGet();
+            closeQuietly(evicted.physical);
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Cache hit, miss and eviction counts for one SQL text, summed over every connection in the pool.
+     */
+    public static class Counters {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        /**
+         * @return how many times a cached statement was re-used
+         */
+        public long getHits() {
+            return hits.get();
+        }
+
+        /**
+         * @return how many times the SQL had to be prepared
+         */
+        public long getMisses() {
+            return misses.get();
+        }
+
+        /**
+         * @return how many times a statement for this SQL was pushed out of a full cache
+         */
+        public long getEvictions() {
+            return evictions.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Counters{hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + '}';
+        }
+    }
+
+    /**
+     * Statements are cached per SQL text and generated-keys mode.
+     */
+    private static final class Key {
+        final String sql;
+        final int autoGeneratedKeys;
+
+        Key(String sql, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return autoGeneratedKeys == key.autoGeneratedKeys && sql.equals(key.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + autoGeneratedKeys;
+        }
+    }
+
+    /**
+     * A physical statement and its current checkout, null while it waits in the cache.
+     */
+    private static final class CachedStatement {
+        final Key key;
+        final PreparedStatement physical;
+        Checkout current;
+
+        CachedStatement(Key key, PreparedStatement physical) {
+            this.key = key;
+            this.physical = physical;
+        }
+    }
+
+    /**
+     * One checkout of a cached statement. The proxy handed to the caller is only usable until the checkout is checked
+     * in, like a pooled connection's lease.
+     */
+    private class Checkout implements InvocationHandler {
+        final CachedStatement cached;
+        final Connection owner;
+        final PreparedStatement proxy;
+        boolean closed;
+
+        Checkout(CachedStatement cached, Connection owner) {
+            this.cached = cached;
+            this.owner = owner;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) checkIn(cached);
+                    return null;
+                case "isClosed":
+                    return closed || cached.physical.isClosed();
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + cached.key.sql + "]";
+                default:
+                    break;
+            }
+            if (closed) throw new SQLException("Statement is closed");
+            try {
+                return method.invoke(cached.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package Util;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps an SQLException where a checked exception can not be thrown, such as partway through streaming rows to a
+ * consumer, the way UncheckedIOException wraps an IOException.
+ */
+public class UncheckedSQLException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
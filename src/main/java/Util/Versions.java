@@ -0,0 +1,71 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import Model.Message;
+
+/**
+ * Modification counters for messages, for tagging responses with a version that changes whenever their content may
+ * have: one per message, one per account and one for everything.
+ *
+ * Message and account counters are striped: ids are hashed onto a fixed table of counters, so the table never grows
+ * with the data. Ids that share a counter also share its changes, which can only make a tag change when its own
+ * message did not, never the other way round.
+ *
+ * A counter is bumped after the change it records is visible to readers, and a reader takes the version before it
+ * reads. A response may therefore carry a version older than its content, which costs the client one more full
+ * response, but never one newer. Tags also carry the time the counters were created, so tags handed out before a
+ * restart, when the counters start again from 0, never match.
+ */
+public class Versions {
+    private static final int MESSAGE_STRIPES = 1 << 16;
+    private static final int ACCOUNT_STRIPES = 1 << 12;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong global = new AtomicLong();
+    private final AtomicLongArray messages = new AtomicLongArray(MESSAGE_STRIPES);
+    private final AtomicLongArray accounts = new AtomicLongArray(ACCOUNT_STRIPES);
+
+    /**
+     * Record that a message was created, updated or deleted. Call once the change is visible to every reader.
+     */
+    public void changed(Message message) {
+        messages.incrementAndGet(stripe(message.getMessage_id(), MESSAGE_STRIPES));
+        accounts.incrementAndGet(stripe(message.getPosted_by(), ACCOUNT_STRIPES));
+        global.incrementAndGet();
+    }
+
+    /**
+     * @return the tag of the current version of a message
+     */
+    public String getMessageTag(int message_id) {
+        return tag('m', messages.get(stripe(message_id, MESSAGE_STRIPES)));
+    }
+
+    /**
+     * @return the tag of the current version of an account's messages
+     */
+    public String getAccountTag(int account_id) {
+        return tag('a', accounts.get(stripe(account_id, ACCOUNT_STRIPES)));
+    }
+
+    /**
+     * @return the tag of the current version of all messages
+     */
+    public String getGlobalTag() {
+        return tag('g', global.get());
+    }
+
+    /**
+     * @return a strong entity tag, quoted as the ETag header wants it
+     */
+    private String tag(char kind, long version) {
+        return "\"" + epoch + "-" + kind + version + "\"";
+    }
+
+    private static int stripe(int id, int stripes) {
+        int hash = id ^ id >>> 16;
+        return hash & (stripes - 1);
+    }
+}
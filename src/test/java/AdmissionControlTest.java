@@ -0,0 +1,106 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AdmissionControlTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app admitting one write at a time with no queue, and
+     * create a new webClient for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("admission.writes.maxInFlight", "1");
+        System.setProperty("admission.writes.maxQueued", "0");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("admission.writes.maxInFlight");
+        System.clearProperty("admission.writes.maxQueued");
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages over a raw socket with its body held back, so that it occupies the only
+     * write slot, then sending another POST and a GET localhost:8080/messages/1 while it is running
+     *
+     * Expected Response:
+     *  Status Code: 503 with a Retry-After header for the second POST, 200 for the GET, and 200 for the first POST
+     *  once its body arrives
+     */
+    @Test
+    public void writeOverLimitRejected() throws IOException, InterruptedException {
+        String json = "{\"posted_by\":1, \"message_text\":\"test message 2\", \"time_posted_epoch\":1669947793}";
+        byte[] bodyBytes = json.getBytes(StandardCharsets.UTF_8);
+        try (Socket held = new Socket("localhost", 8080)) {
+            OutputStream out = held.getOutputStream();
+            out.write(("POST /messages HTTP/1.1\r\nHost: localhost:8080\r\nContent-Type: application/json\r\n"
+                    + "Content-Length: " + bodyBytes.length + "\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.write(bodyBytes, 0, 10);
+            out.flush();
+            for (int i = 0; i < 100 && !metrics().contains("admission_in_flight{class=\"write\"} 1\n"); i++) {
+                Thread.sleep(50);
+            }
+
+            HttpResponse<String> rejected = post("/messages",
+                    "{\"posted_by\":1, \"message_text\":\"test message 3\", \"time_posted_epoch\":1669947794}");
+            Assert.assertEquals(503, rejected.statusCode());
+            Assert.assertEquals("1", rejected.headers().firstValue("Retry-After").orElse(null));
+            Assert.assertEquals(200, webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/1")).build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+
+            out.write(bodyBytes, 10, bodyBytes.length - 10);
+            out.flush();
+            String status = new BufferedReader(new InputStreamReader(held.getInputStream(),
+                    StandardCharsets.US_ASCII)).readLine();
+            Assert.assertEquals("HTTP/1.1 200 OK", status);
+        }
+
+        String metrics = metrics();
+        Assert.assertTrue(metrics.contains("admission_rejected_total{class=\"write\",reason=\"queue_full\"} 1\n"));
+        Assert.assertTrue(metrics.contains("admission_in_flight{class=\"write\"} 0\n"));
+        Assert.assertTrue(metrics.contains("http_requests_total{route=\"POST /messages\",status=\"503\"} 1\n"));
+    }
+
+    private String metrics() throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/metrics")).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,186 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.h2.api.Trigger;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Finds the highest number of concurrent clients the API sustains with handlers on platform threads and with handlers
+ * on virtual threads (server.virtualThreads). This is not a test case and is not run by mvn test. Virtual threads
+ * need JDK 21 or later, so run it with such a JDK:
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=ConcurrencyLoadBenchmark -Ddb.pool.maxSize=2000 -Dexec.args="100,250,500,1000,2000 5 20 500"
+ *
+ * The arguments are the comma separated concurrency levels, the seconds each level runs for, the latency in
+ * milliseconds added to every query on the message table (standing in for the round trip to a database server, since
+ * the embedded H2 answers in microseconds), and the p99 latency in milliseconds a level must stay under to count as
+ * sustained. Each client sends GET /accounts/1/messages?sort=latest and sends its next request as soon as the previous
+ * one is answered. Raise db.pool.maxSize above the highest level, or the connection pool rather than the thread model
+ * will be what limits both modes.
+ */
+public class ConcurrencyLoadBenchmark {
+    private static final String PATH = "/accounts/1/messages?sort=latest&limit=20";
+    private static volatile long queryLatencyMillis;
+
+    public static void main(String[] args) throws Exception {
+        int[] levels = Arrays.stream((args.length > 0 ? args[0] : "100,250,500,1000,2000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        queryLatencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        long sloMillis = args.length > 3 ? Long.parseLong(args[3]) : 500;
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        for (boolean virtualThreads : new boolean[] {false, true}) {
+            String mode = virtualThreads ? "virtual" : "platform";
+            System.setProperty("server.virtualThreads", Boolean.toString(virtualThreads));
+            ConnectionUtil.resetTestDatabase();
+            addQueryLatency();
+            Javalin app = new SocialMediaController().startAPI();
+            app.start(0);
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + app.port() + PATH))
+                    .timeout(Duration.ofSeconds(10))
+                    .build();
+
+            // Warm up before measuring
+            run(client, request, Math.min(levels[0], 50), 2);
+            int sustained = 0;
+            for (int level : levels) {
+                Result result = run(client, request, level, seconds);
+                System.out.printf("%-8s clients=%-5d req/s=%-8.0f p50=%-8.1f p99=%-8.1f errors=%d%n", mode, level,
+                        result.requests / (double) seconds, result.percentile(0.50), result.percentile(0.99),
+                        result.errors);
+                if (result.errors > 0 || result.percentile(0.99) > sloMillis) break;
+                sustained = level;
+            }
+            System.out.printf("%-8s max sustained concurrency: %d clients (p99 under %d ms, no errors)%n", mode,
+                    sustained, sloMillis);
+            app.stop();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Make every query on the message table take queryLatencyMillis longer.
+     */
+    private static void addQueryLatency() throws SQLException {
+        Connection connection = ConnectionUtil.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TRIGGER message_query_latency BEFORE SELECT ON message CALL \""
+                    + SimulatedLatency.class.getName() + "\"");
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Run clients concurrent clients for the given number of seconds.
+     */
+    private static Result run(HttpClient client, HttpRequest request, int clients, int seconds) {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<LoadClient> loadClients = new ArrayList<>();
+        List<CompletableFuture<Void>> done = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            LoadClient loadClient = new LoadClient(client, request, deadline);
+            loadClients.add(loadClient);
+            done.add(loadClient.start());
+        }
+        CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).join();
+
+        Result result = new Result();
+        for (LoadClient loadClient : loadClients) result.add(loadClient);
+        return result;
+    }
+
+    /**
+     * One client sending a request, waiting for the response, and sending the next until the deadline passes.
+     */
+    private static class LoadClient {
+        private final HttpClient client;
+        private final HttpRequest request;
+        private final long deadline;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private long[] latencies = new long[64];
+        private int count;
+        private int errors;
+
+        LoadClient(HttpClient client, HttpRequest request, long deadline) {
+            this.client = client;
+            this.request = request;
+            this.deadline = deadline;
+        }
+
+        CompletableFuture<Void> start() {
+            send();
+            return done;
+        }
+
+        private void send() {
+            long start = System.nanoTime();
+            if (start - deadline >= 0) {
+                done.complete(null);
+                return;
+            }
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+                if (failure != null || response.statusCode() != 200) {
+                    errors++;
+                } else {
+                    if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                    latencies[count++] = System.nanoTime() - start;
+                }
+                send();
+            });
+        }
+    }
+
+    private static class Result {
+        private long[] latencies = new long[0];
+        private long requests;
+        private long errors;
+
+        void add(LoadClient loadClient) {
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + loadClient.count);
+            System.arraycopy(loadClient.latencies, 0, latencies, offset, loadClient.count);
+            requests += loadClient.count;
+            errors += loadClient.errors;
+        }
+
+        /**
+         * @return the latency in milliseconds at the given quantile, 0 if nothing succeeded
+         */
+        double percentile(double quantile) {
+            if (latencies.length == 0) return 0;
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, (int) (sorted.length * quantile))] / 1_000_000.0;
+        }
+    }
+
+    /**
+     * Trigger that sleeps before each query on the table it is created on.
+     */
+    public static class SimulatedLatency implements Trigger {
+        @Override
+        public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+            try {
+                Thread.sleep(queryLatencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException(e);
+            }
+        }
+    }
+}
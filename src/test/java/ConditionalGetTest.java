@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1, then again with its ETag in If-None-Match, before and
+     * after the message is updated
+     *
+     * Expected Response:
+     *  Status Code: 200 with an ETag, then 304 with no body, then 200 with the updated message and a new ETag
+     */
+    @Test
+    public void getMessageNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/1", null);
+        Assert.assertEquals(200, response.statusCode());
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(etag);
+
+        response = get("/messages/1", etag);
+        Assert.assertEquals(304, response.statusCode());
+        Assert.assertTrue(response.body().isEmpty());
+        Assert.assertEquals(etag, response.headers().firstValue("ETag").orElse(null));
+
+        Assert.assertEquals(200, send("PATCH", "/messages/1", "{\"message_text\":\"updated message\"}").statusCode());
+
+        response = get("/messages/1", etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(1, 1, "updated message", 1669947792),
+                objectMapper.readValue(response.body(), Message.class));
+        Assert.assertNotEquals(etag, response.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages and to GET localhost:8080/messages with their
+     * ETags in If-None-Match, before and after account 1 posts a message
+     *
+     * Expected Response:
+     *  Status Code: 304 for both before the message is posted, with the weak tags as sent or without W/, 200 for both
+     *  after
+     */
+    @Test
+    public void getListingsNotModified() throws IOException, InterruptedException {
+        String accountTag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElse(null);
+        String globalTag = get("/messages", null).headers().firstValue("ETag").orElse(null);
+        Assert.assertTrue(accountTag.startsWith("W/\""));
+        Assert.assertTrue(globalTag.startsWith("W/\""));
+        Assert.assertEquals(304, get("/accounts/1/messages", accountTag).statusCode());
+        Assert.assertEquals(304, get("/messages", globalTag.substring(2)).statusCode());
+
+        Assert.assertEquals(200, send("POST", "/messages",
+                "{\"posted_by\":1, \"message_text\":\"test message 2\", \"time_posted_epoch\":1669947793}")
+                .statusCode());
+
+        Assert.assertEquals(200, get("/accounts/1/messages", accountTag).statusCode());
+        Assert.assertEquals(200, get("/messages", globalTag).statusCode());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) request.header("If-None-Match", ifNoneMatch);
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
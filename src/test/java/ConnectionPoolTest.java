@@ -0,0 +1,148 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    ConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:connectionPoolTest;DB_CLOSE_DELAY=-1");
+        pool = new ConnectionPool(dataSource, 1, 0, 100, 0, true, 8);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    static int selectOne(Connection connection) throws SQLException {
+        try (ResultSet resultSet = connection.prepareStatement("SELECT 1").executeQuery()) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    /**
+     * Borrowing a connection while another thread holds the only one for longer than the acquisition timeout
+     *
+     * Expected Result:
+     *  The borrow fails with an SQLTransientConnectionException and is counted as a timeout, and the connection can be
+     *  borrowed once it is returned
+     */
+    @Test
+    public void acquireTimesOut() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            try (Connection connection = pool.getConnection()) {
+                holding.countDown();
+                release.await();
+            } catch (SQLException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        holder.start();
+        Assert.assertTrue(holding.await(5, TimeUnit.SECONDS));
+
+        try {
+            pool.getConnection();
+            Assert.fail("expected the borrow to time out");
+        } catch (SQLTransientConnectionException e) {
+            Assert.assertEquals(1, pool.getTimeoutCount());
+        }
+
+        release.countDown();
+        holder.join();
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertEquals(1, selectOne(connection));
+        }
+        Assert.assertEquals(1, pool.getCreatedCount());
+    }
+
+    /**
+     * Borrowing twice on one thread, then closing the connection twice
+     *
+     * Expected Result:
+     *  Both borrows share one physical connection, which goes back to the pool only when the outer borrow closes it,
+     *  and can no longer be used through the closed proxy
+     */
+    @Test
+    public void borrowIsReentrant() throws SQLException {
+        Connection outer = pool.getConnection();
+        Connection inner = pool.getConnection();
+        Assert.assertSame(outer, inner);
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getTotalCount());
+
+        inner.close();
+        Assert.assertEquals(1, pool.getActiveCount());
+        Assert.assertEquals(1, selectOne(outer));
+
+        outer.close();
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+        Assert.assertTrue(outer.isClosed());
+        try {
+            outer.prepareStatement("SELECT 1");
+            Assert.fail("expected a closed connection to refuse use");
+        } catch (SQLException e) {
+            Assert.assertEquals("Connection is closed", e.getMessage());
+        }
+    }
+
+    /**
+     * Aborting a borrowed connection, as a failed stream does, then returning it
+     *
+     * Expected Result:
+     *  The physical connection is closed and dropped from the pool, and the next borrow opens a new one
+     */
+    @Test
+    public void abortedConnectionDiscarded() throws SQLException {
+        Connection aborted = pool.getConnection();
+        aborted.abort(Runnable::run);
+        Assert.assertTrue(aborted.isClosed());
+        aborted.close();
+        Assert.assertEquals(0, pool.getTotalCount());
+        Assert.assertEquals(0, pool.getIdleCount());
+
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertEquals(1, selectOne(connection));
+        }
+        Assert.assertEquals(2, pool.getCreatedCount());
+    }
+
+    /**
+     * Returning a connection with a transaction still open
+     *
+     * Expected Result:
+     *  The transaction is rolled back and the next borrower gets the connection in auto-commit mode
+     */
+    @Test
+    public void openTransactionRolledBack() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.prepareStatement("CREATE TABLE IF NOT EXISTS pool_test (id INT)").executeUpdate();
+            connection.setAutoCommit(false);
+            connection.prepareStatement("INSERT INTO pool_test VALUES (1)").executeUpdate();
+        }
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertTrue(connection.getAutoCommit());
+            try (ResultSet resultSet = connection.prepareStatement("SELECT COUNT(*) FROM pool_test").executeQuery()) {
+                resultSet.next();
+                Assert.assertEquals(0, resultSet.getInt(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessageBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with two valid messages, one blank message and
+     * one message from a user that doesnt exist in db
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of one result per message, the valid ones with their new message ids
+     */
+    @Test
+    public void createMessageBatchPartiallySuccessful() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947792}, " +
+                        "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947792}, " +
+                        "{\"posted_by\":3, \"message_text\": \"no such user\", \"time_posted_epoch\": 1669947792}, " +
+                        "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+        Assert.assertEquals(200, status);
+
+        JsonNode results = objectMapper.readTree(response.body());
+        Assert.assertEquals(4, results.size());
+        Assert.assertEquals(200, results.get(0).get("status").asInt());
+        Assert.assertEquals(400, results.get(1).get("status").asInt());
+        Assert.assertEquals(400, results.get(2).get("status").asInt());
+        Assert.assertEquals(200, results.get(3).get("status").asInt());
+        Assert.assertTrue(results.get(1).get("message").isNull());
+        Assert.assertEquals(3, results.get(3).get("index").asInt());
+
+        Assert.assertEquals(new Message(2, 1, "first", 1669947792),
+                objectMapper.treeToValue(results.get(0).get("message"), Message.class));
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793),
+                objectMapper.treeToValue(results.get(3).get("message"), Message.class));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a body that is not a JSON array
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void createMessageBatchNotAnArray() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+
+        Assert.assertEquals(400, status);
+        Assert.assertEquals("", response.body());
+    }
+}
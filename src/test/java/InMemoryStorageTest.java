@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.StorageEngine;
+import Model.Account;
+import Model.Message;
+import io.javalin.Javalin;
+
+@RunWith(Parameterized.class)
+public class InMemoryStorageTest {
+    /**
+     * The storage engines that keep everything in the process, each run through every test.
+     */
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<StorageEngine> engines() {
+        return Arrays.asList(StorageEngine.MEMORY, StorageEngine.OFF_HEAP);
+    }
+
+    @Parameterized.Parameter
+    public StorageEngine engine;
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, start the Javalin app on the storage engine under test, which starts out empty, and create a
+     * new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI(engine);
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Registering an account, posting three messages, then updating one, deleting another and listing what is left
+     *
+     * Expected Response:
+     *  Status Code: 200 throughout
+     *  Response Body: ids handed out from 1, as H2's identity columns do; the listing holds the updated message and
+     *  the untouched one in message id order, and the latest listing holds them newest first
+     */
+    @Test
+    public void messageLifecycleInMemory() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "/register",
+                "{\"username\":\"memoryuser\", \"password\":\"password\"}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Account(1, "memoryuser", "password"),
+                objectMapper.readValue(response.body(), Account.class));
+
+        for (int i = 1; i <= 3; i++) {
+            response = send("POST", "/messages", "{\"posted_by\":1, \"message_text\":\"message " + i + "\", "
+                    + "\"time_posted_epoch\":" + (1000 + i) + "}");
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(new Message(i, 1, "message " + i, 1000 + i),
+                    objectMapper.readValue(response.body(), Message.class));
+        }
+
+        response = send("PATCH", "/messages/1", "{\"message_text\":\"updated\"}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(1, 1, "updated", 1001), objectMapper.readValue(response.body(), Message.class));
+
+        response = send("DELETE", "/messages/2", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(2, 1, "message 2", 1002),
+                objectMapper.readValue(response.body(), Message.class));
+
+        response = send("GET", "/messages/2", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("", response.body());
+
+        response = send("GET", "/accounts/1/messages", null);
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "updated", 1001), new Message(3, 1, "message 3", 1003)),
+                messages);
+
+        response = send("GET", "/accounts/1/messages?sort=latest", null);
+        Assert.assertEquals(200, response.statusCode());
+        messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(3, 1, "message 3", 1003), new Message(1, 1, "updated", 1001)),
+                messages);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
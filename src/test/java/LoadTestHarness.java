@@ -0,0 +1,377 @@
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import io.javalin.Javalin;
+
+/**
+ * Drives an open-loop mix of requests at every route of SocialMediaController and reports per-route throughput and
+ * latency percentiles, with the full latency histograms, as JSON. This is not a test case and is not run by mvn test.
+ * Run it with:
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=LoadTestHarness -Dexec.args="mixed 500,1000,2000 10"
+ *
+ * The arguments are the request mix (read-heavy, write-heavy or mixed), the comma separated request rates per second
+ * to run one after the other, the seconds each rate runs for, and the report file (target/load-report.json by
+ * default). The app is started on an ephemeral port against a local H2 database in target/loadtest, unless -Ddb.url
+ * says otherwise, seeded with -Dload.accounts accounts (1000) and -Dload.messages messages (100000).
+ *
+ * The load is open loop: requests are sent on a fixed schedule whether or not earlier ones have been answered, and
+ * each latency is measured from the time its request was due to be sent. A slow server therefore shows up as high
+ * latency instead of quietly lowering the request rate. At most -Dload.maxInFlight (10000) requests are outstanding;
+ * requests due beyond that are counted as dropped.
+ */
+public class LoadTestHarness {
+    private static final int ACCOUNTS = Integer.getInteger("load.accounts", 1000);
+    private static final int MESSAGES = Integer.getInteger("load.messages", 100000);
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("load.maxInFlight", 10000);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmupSeconds", 5);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    public static void main(String[] args) throws Exception {
+        Mix mix = Mix.named(args.length > 0 ? args[0] : "mixed");
+        String[] rates = (args.length > 1 ? args[1] : "500,1000,2000").split(",");
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        File reportFile = new File(args.length > 3 ? args[3] : "target/load-report.json");
+
+        if (System.getProperty("db.url") == null) System.setProperty("db.url", "jdbc:h2:./target/loadtest/db");
+        seed();
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(0);
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        Target target = new Target(client, "http://localhost:" + app.port());
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mix", mix.name);
+        report.put("accounts", ACCOUNTS);
+        report.put("messages", MESSAGES);
+        report.put("secondsPerRate", seconds);
+        List<Object> runs = new ArrayList<>();
+        report.put("runs", runs);
+
+        run(target, mix, Integer.parseInt(rates[0]), WARMUP_SECONDS);
+        for (String rate : rates) {
+            Run run = run(target, mix, Integer.parseInt(rate), seconds);
+            runs.add(run.toReport(seconds));
+            System.out.printf("%s at %s req/s: sent=%d completed=%d dropped=%d%n", mix.name, rate, run.sent,
+                    run.completed(), run.dropped);
+            for (Map.Entry<String, RouteStats> route : run.routes.entrySet()) {
+                LatencyHistogram latency = route.getValue().latency;
+                System.out.printf("  %-34s %8.1f req/s p50=%8.2f p99=%8.2f p99.9=%8.2f ms errors=%d%n",
+                        route.getKey(), latency.getCount() / (double) seconds,
+                        millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(99)),
+                        millis(latency.getValueAtPercentile(99.9)), route.getValue().errors.get());
+            }
+        }
+
+        reportFile.getAbsoluteFile().getParentFile().mkdirs();
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+        System.out.println("report written to " + reportFile.getPath());
+        app.stop();
+        System.exit(0);
+    }
+
+    /**
+     * Reset the schema and fill it with ACCOUNTS accounts named user1... with password "password", and MESSAGES
+     * messages spread over them.
+     */
+    private static void seed() throws Exception {
+        ConnectionUtil.resetTestDatabase();
+        Connection connection = ConnectionUtil.getConnection();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("DELETE FROM message");
+            statement.execute("DELETE FROM account");
+            statement.execute("ALTER TABLE account ALTER COLUMN account_id RESTART WITH 1");
+            statement.execute("ALTER TABLE message ALTER COLUMN message_id RESTART WITH 1");
+            statement.execute("INSERT INTO account(username, password) SELECT 'user' || X, 'password' "
+                    + "FROM SYSTEM_RANGE(1, " + ACCOUNTS + ")");
+            statement.execute("INSERT INTO message(posted_by, message_text, time_posted_epoch) "
+                    + "SELECT MOD(X, " + ACCOUNTS + ") + 1, 'load test message ' || X, 1669947792 + X "
+                    + "FROM SYSTEM_RANGE(1, " + MESSAGES + ")");
+        } finally {
+            ConnectionUtil.releaseConnection(connection);
+        }
+    }
+
+    /**
+     * Send requests at ratePerSecond for the given number of seconds, then wait for the outstanding ones.
+     */
+    private static Run run(Target target, Mix mix, int ratePerSecond, int seconds) throws InterruptedException {
+        Run run = new Run(ratePerSecond);
+        SplittableRandom random = new SplittableRandom(ratePerSecond);
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        long requests = (long) ratePerSecond * seconds;
+        long start = System.nanoTime();
+
+        for (long i = 0; i < requests; i++) {
+            long due = start + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+
+            Operation operation = mix.pick(random);
+            RouteStats stats = run.routes.computeIfAbsent(operation.route, route -> new RouteStats());
+            run.sent++;
+            if (!inFlight.tryAcquire()) {
+                run.dropped++;
+                continue;
+            }
+            target.client.sendAsync(operation.request(target.baseUrl, random), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        stats.latency.record(System.nanoTime() - due);
+                        if (failure != null) {
+                            stats.errors.incrementAndGet();
+                        } else {
+                            stats.statuses.computeIfAbsent(response.statusCode(), status -> new AtomicLong())
+                                    .incrementAndGet();
+                            if (response.statusCode() >= 500) stats.errors.incrementAndGet();
+                        }
+                        inFlight.release();
+                    });
+        }
+        inFlight.acquire(MAX_IN_FLIGHT);
+        run.elapsedNanos = System.nanoTime() - start;
+        return run;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static class Target {
+        final HttpClient client;
+        final String baseUrl;
+
+        Target(HttpClient client, String baseUrl) {
+            this.client = client;
+            this.baseUrl = baseUrl;
+        }
+    }
+
+    /**
+     * The results of one request rate.
+     */
+    private static class Run {
+        final int ratePerSecond;
+        final Map<String, RouteStats> routes = new LinkedHashMap<>();
+        long sent;
+        long dropped;
+        long elapsedNanos;
+
+        Run(int ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+        }
+
+        long completed() {
+            long completed = 0;
+            for (RouteStats stats : routes.values()) completed += stats.latency.getCount();
+            return completed;
+        }
+
+        Map<String, Object> toReport(int seconds) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("targetRate", ratePerSecond);
+            report.put("sent", sent);
+            report.put("completed", completed());
+            report.put("dropped", dropped);
+            report.put("achievedRate", completed() / (elapsedNanos / 1e9));
+            Map<String, Object> routeReports = new LinkedHashMap<>();
+            for (Map.Entry<String, RouteStats> route : routes.entrySet()) {
+                routeReports.put(route.getKey(), route.getValue().toReport(seconds));
+            }
+            report.put("routes", routeReports);
+            return report;
+        }
+    }
+
+    private static class RouteStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        final ConcurrentMap<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+
+        Map<String, Object> toReport(int seconds) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("count", latency.getCount());
+            report.put("throughput", latency.getCount() / (double) seconds);
+            report.put("errors", errors.get());
+            Map<String, Long> statusCounts = new LinkedHashMap<>();
+            statuses.forEach((status, count) -> statusCounts.put(status.toString(), count.get()));
+            report.put("statuses", statusCounts);
+            Map<String, Double> latencyMillis = new LinkedHashMap<>();
+            latencyMillis.put("mean", latency.getMean() / 1_000_000.0);
+            for (double percentile : PERCENTILES) {
+                String name = percentile == Math.rint(percentile) ? Long.toString((long) percentile)
+                        : Double.toString(percentile);
+                latencyMillis.put("p" + name, millis(latency.getValueAtPercentile(percentile)));
+            }
+            latencyMillis.put("max", millis(latency.getMax()));
+            report.put("latencyMillis", latencyMillis);
+            // Only the buckets that were hit, each as [lowest ns, highest ns, count]
+            List<long[]> histogram = new ArrayList<>();
+            for (int bucket = 0; bucket < latency.getBucketCount(); bucket++) {
+                long count = latency.getCountAt(bucket);
+                if (count > 0) {
+                    histogram.add(new long[] {LatencyHistogram.lowestValueOf(bucket),
+                            LatencyHistogram.highestValueOf(bucket), count});
+                }
+            }
+            report.put("histogramNanos", histogram);
+            return report;
+        }
+    }
+
+    /**
+     * One kind of request, named after the route it hits as registered in startAPI().
+     */
+    private abstract static class Operation {
+        final String route;
+
+        Operation(String route) {
+            this.route = route;
+        }
+
+        abstract HttpRequest request(String baseUrl, SplittableRandom random);
+
+        static HttpRequest.Builder to(String baseUrl, String path) {
+            return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30));
+        }
+
+        static int anyMessage(SplittableRandom random) {
+            return random.nextInt(MESSAGES) + 1;
+        }
+
+        static int anyAccount(SplittableRandom random) {
+            return random.nextInt(ACCOUNTS) + 1;
+        }
+
+        static String newMessageJson(SplittableRandom random) {
+            return "{\"posted_by\":" + anyAccount(random) + ",\"message_text\":\"load test message\","
+                    + "\"time_posted_epoch\":" + (1669947792L + random.nextInt(MESSAGES)) + "}";
+        }
+
+        static final Operation GET_MESSAGE = new Operation("GET /messages/{message_id}") {
+            HttpRequest request(String baseUrl, SplittableRandom random) {
+                return to(baseUrl, "/messages/" + anyMessage(random)).build();
+            }
+        };
+        static final Operation GET_MESSAGES = new Operation("GET /messages") {
+            HttpRequest request(String baseUrl, SplittableRandom random) {
+                return to(baseUrl, "/messages?limit=20&after_id=" + random.nextInt(MESSAGES)).build();
+            }
+        };
+        static final Operation GET_ACCOUNT_MESSAGES = new Operation("GET /accounts/{account_id}/messages") {
+            HttpRequest request(String baseUrl, SplittableRandom random) {
+                return to(baseUrl, "/accounts/" + anyAccount(random) + "/messages?sort=latest&limit=20").build();
+            }
+        };
+        static final Operation LOGIN = new Operation("POST /login") {
+            HttpRequest request(String baseUrl, SplittableRandom random) {
+                String body = "{\"username\":\"user" + anyAccount(random) + "\",\"password\":\"password\"}";
+                return to(baseUrl, "/login").POST(HttpRequest.BodyPublishers.ofString(body)).build();
+            }
+        };
+        static final Operation REGISTER = new Operation("POST /register") {
+            HttpRequest request(String baseUrl, SplittableRandom random) {
+                String body = "{\"username\":\"load" + random.nextLong() + "\",\"password\":\"password\"}";
+                return to(baseUrl, "/register").POST(HttpRequest.BodyPublishers.ofString(body)).build();
+            }
+        };
+        static final Operation CREATE_MESSAGE = new Operation("POST /messages") {
+            HttpRequest request(String baseUrl, SplittableRandom random) {
+                return to(baseUrl, "/messages")
+                        .POST(HttpRequest.BodyPublishers.ofString(newMessageJson(random))).build();
+            }
+        };
+        static final Operation CREATE_MESSAGE_BATCH = new Operation("POST /messages/batch") {
+            HttpRequest request(String baseUrl, SplittableRandom random) {
+                StringBuilder body = new StringBuilder("[");
+                for (int i = 0; i < 10; i++) body.append(i == 0 ? "" : ",").append(newMessageJson(random));
+                return to(baseUrl, "/messages/batch")
+                        .POST(HttpRequest.BodyPublishers.ofString(body.append(']').toString())).build();
+            }
+        };
+        static final Operation UPDATE_MESSAGE = new Operation("PATCH /messages/{message_id}") {
+            HttpRequest request(String baseUrl, SplittableRandom random) {
+                return to(baseUrl, "/messages/" + anyMessage(random))
+                        .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"updated\"}"))
+                        .build();
+            }
+        };
+        static final Operation DELETE_MESSAGE = new Operation("DELETE /messages/{message_id}") {
+            HttpRequest request(String baseUrl, SplittableRandom random) {
+                return to(baseUrl, "/messages/" + anyMessage(random)).DELETE().build();
+            }
+        };
+    }
+
+    /**
+     * A weighted choice of operations.
+     */
+    private static class Mix {
+        final String name;
+        final Operation[] operations;
+        final int[] cumulativeWeights;
+
+        private Mix(String name, Object... operationsAndWeights) {
+            this.name = name;
+            int size = operationsAndWeights.length / 2;
+            operations = new Operation[size];
+            cumulativeWeights = new int[size];
+            int total = 0;
+            for (int i = 0; i < size; i++) {
+                operations[i] = (Operation) operationsAndWeights[2 * i];
+                total += (Integer) operationsAndWeights[2 * i + 1];
+                cumulativeWeights[i] = total;
+            }
+        }
+
+        Operation pick(SplittableRandom random) {
+            int roll = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            for (int i = 0; i < operations.length; i++) {
+                if (roll < cumulativeWeights[i]) return operations[i];
+            }
+            return operations[operations.length - 1];
+        }
+
+        static Mix named(String name) {
+            switch (name) {
+                case "read-heavy":
+                    return new Mix(name, Operation.GET_MESSAGE, 40, Operation.GET_ACCOUNT_MESSAGES, 30,
+                            Operation.GET_MESSAGES, 15, Operation.LOGIN, 10, Operation.CREATE_MESSAGE, 5);
+                case "write-heavy":
+                    return new Mix(name, Operation.CREATE_MESSAGE, 40, Operation.UPDATE_MESSAGE, 20,
+                            Operation.DELETE_MESSAGE, 5, Operation.CREATE_MESSAGE_BATCH, 10, Operation.REGISTER, 10,
+                            Operation.GET_MESSAGE, 15);
+                case "mixed":
+                    return new Mix(name, Operation.GET_MESSAGE, 25, Operation.GET_ACCOUNT_MESSAGES, 20,
+                            Operation.GET_MESSAGES, 10, Operation.LOGIN, 5, Operation.CREATE_MESSAGE, 20,
+                            Operation.CREATE_MESSAGE_BATCH, 5, Operation.UPDATE_MESSAGE, 10,
+                            Operation.DELETE_MESSAGE, 3, Operation.REGISTER, 2);
+                default:
+                    throw new IllegalArgumentException("Unknown mix " + name
+                            + ", expected read-heavy, write-heavy or mixed");
+            }
+        }
+    }
+}
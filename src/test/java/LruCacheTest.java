@@ -0,0 +1,88 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.LruCache;
+
+public class LruCacheTest {
+    /**
+     * Invalidating a key while another thread is loading it
+     *
+     * Expected Result:
+     *  The loading thread gets the value it loaded, but it is not cached, so the next get loads again
+     */
+    @Test
+    public void invalidationDuringLoadNotUndone() throws Exception {
+        LruCache<Integer, String> cache = new LruCache<>(100, 0, 0);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch finishLoad = new CountDownLatch(1);
+        CompletableFuture<String> slowGet = CompletableFuture.supplyAsync(() -> cache.get(1, key -> {
+            loading.countDown();
+            try {
+                finishLoad.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "stale";
+        }));
+        Assert.assertTrue(loading.await(5, TimeUnit.SECONDS));
+        cache.invalidate(1);
+        finishLoad.countDown();
+
+        Assert.assertEquals("stale", slowGet.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals("fresh", cache.get(1, key -> "fresh"));
+        Assert.assertEquals("fresh", cache.get(1, key -> "unused"));
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * Getting a key again before and after its TTL has passed, for a loaded value and for a null result
+     *
+     * Expected Result:
+     *  Each is answered from the cache until its TTL passes, and loaded again afterwards
+     */
+    @Test
+    public void expiredEntriesLoadedAgain() throws InterruptedException {
+        LruCache<Integer, String> cache = new LruCache<>(100, 2000, 300);
+        AtomicInteger loads = new AtomicInteger();
+
+        Assert.assertEquals("value", cache.get(1, key -> {
+            loads.incrementAndGet();
+            return "value";
+        }));
+        Assert.assertNull(cache.get(2, key -> {
+            loads.incrementAndGet();
+            return null;
+        }));
+        Assert.assertEquals("value", cache.get(1, key -> "unused"));
+        Assert.assertNull(cache.get(2, key -> "unused"));
+        Assert.assertEquals(2, loads.get());
+
+        Thread.sleep(400);
+        Assert.assertEquals("value", cache.get(1, key -> "unused"));
+        Assert.assertEquals("reloaded", cache.get(2, key -> "reloaded"));
+
+        Thread.sleep(2000);
+        Assert.assertEquals("reloaded", cache.get(1, key -> "reloaded"));
+    }
+
+    /**
+     * Loading more keys than the cache holds
+     *
+     * Expected Result:
+     *  The cache stays within its maximum size and counts the evictions
+     */
+    @Test
+    public void boundedBySize() {
+        LruCache<Integer, Integer> cache = new LruCache<>(10, 0, 0);
+        for (int i = 0; i < 25; i++) cache.get(i, key -> key);
+        Assert.assertEquals(10, cache.size());
+        Assert.assertEquals(15, cache.getEvictionCount());
+    }
+}
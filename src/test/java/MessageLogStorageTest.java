@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.StorageEngine;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageLogStorageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path logDirectory;
+
+    /**
+     * Before every test, reset the database, which holds the accounts, point the message log at an empty directory,
+     * start the Javalin app on the log storage engine, and create a new webClient and ObjectMapper for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        logDirectory = Files.createTempDirectory("messages-log");
+        System.setProperty("messages.log.dir", logDirectory.toString());
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        app.stop();
+        System.clearProperty("messages.log.dir");
+        try (Stream<Path> files = Files.walk(logDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void start() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI(StorageEngine.LOG);
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    /**
+     * Posting three messages, updating one and deleting another, then restarting the app on the same log
+     *
+     * Expected Response:
+     *  Status Code: 200 throughout
+     *  Response Body: after the restart the updated message is read back with its new text, the deleted one is gone,
+     *  the account listing holds the other two, and the next message posted gets the next id
+     */
+    @Test
+    public void messagesSurviveRestart() throws IOException, InterruptedException {
+        for (int i = 1; i <= 3; i++) {
+            HttpResponse<String> response = send("POST", "/messages", "{\"posted_by\":1, \"message_text\":\"message "
+                    + i + "\", \"time_posted_epoch\":" + (1000 + i) + "}");
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(new Message(i, 1, "message " + i, 1000 + i),
+                    objectMapper.readValue(response.body(), Message.class));
+        }
+        Assert.assertEquals(200, send("PATCH", "/messages/1", "{\"message_text\":\"updated\"}").statusCode());
+        Assert.assertEquals(200, send("DELETE", "/messages/2", null).statusCode());
+
+        app.stop();
+        start();
+
+        HttpResponse<String> response = send("GET", "/messages/1", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(1, 1, "updated", 1001), objectMapper.readValue(response.body(), Message.class));
+
+        response = send("GET", "/messages/2", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("", response.body());
+
+        response = send("GET", "/accounts/1/messages", null);
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "updated", 1001), new Message(3, 1, "message 3", 1003)),
+                messages);
+
+        response = send("POST", "/messages",
+                "{\"posted_by\":1, \"message_text\":\"message 4\", \"time_posted_epoch\":1004}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(4, 1, "message 4", 1004),
+                objectMapper.readValue(response.body(), Message.class));
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
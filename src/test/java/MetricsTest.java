@@ -0,0 +1,102 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient for interacting
+     * locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 and GET localhost:8080/messages?limit=0, then to
+     * GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text counting both requests by route and status, with their latency histograms and
+     *  the connection pool gauges
+     */
+    @Test
+    public void getMetricsAfterRequests() throws IOException, InterruptedException {
+        send("/messages/1");
+        send("/messages?limit=0");
+
+        HttpResponse<String> response = send("/metrics");
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+        String body = response.body();
+        Assert.assertTrue(body, body.contains(
+                "http_requests_total{route=\"GET /messages/{message_id}\",status=\"200\"} 1\n"));
+        Assert.assertTrue(body, body.contains("http_requests_total{route=\"GET /messages\",status=\"400\"} 1\n"));
+        Assert.assertTrue(body, body.contains(
+                "http_request_duration_seconds_count{route=\"GET /messages/{message_id}\"} 1\n"));
+        Assert.assertTrue(body, body.contains(
+                "http_request_duration_seconds_bucket{route=\"GET /messages\",le=\"+Inf\"} 1\n"));
+        Assert.assertTrue(body, body.contains("db_pool_connections{state=\"active\"} "));
+        Assert.assertFalse(body, body.contains("route=\"GET /metrics\""));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages, then to GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text with the connection acquisition histogram and the execution and iteration
+     *  timings of the listing's SQL
+     */
+    @Test
+    public void getQueryMetricsAfterRequests() throws IOException, InterruptedException {
+        send("/accounts/1/messages");
+
+        HttpResponse<String> response = send("/metrics");
+        int status = response.statusCode();
+
+        Assert.assertEquals(200, status);
+        String body = response.body();
+        String sql = "sql=\"SELECT * FROM message WHERE posted_by = ? AND message_id > ? ORDER BY message_id LIMIT ?;\"";
+        Assert.assertTrue(body, body.contains("db_connection_acquire_seconds_count "));
+        Assert.assertTrue(body, body.contains("db_query_execute_seconds_count{" + sql + "} "));
+        Assert.assertTrue(body, body.contains("db_query_iterate_seconds_bucket{" + sql + ",le=\"+Inf\"} "));
+        Assert.assertTrue(body, body.contains("db_query_rows_total{" + sql + "} "));
+    }
+
+    private HttpResponse<String> send(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,29 @@
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Util.RecentMessagesCache;
+
+public class RecentMessagesCacheTest {
+    /**
+     * Loading an account after a new message is stored but before it is recorded as inserted, as a listing racing
+     * the message's creation does, then recording the insert
+     *
+     * Expected Result:
+     *  The account's listing holds the new message once
+     */
+    @Test
+    public void insertAfterLoadNotDuplicated() {
+        Message created = new Message(2, 1, "test message 2", 1669947793);
+        List<Message> store = List.of(created, new Message(1, 1, "test message 1", 1669947792));
+        RecentMessagesCache cache = new RecentMessagesCache(10, 10, account_id -> store);
+
+        Assert.assertEquals(store, cache.getLatest(1, Long.MAX_VALUE, Integer.MAX_VALUE, 10));
+        cache.inserted(created);
+
+        Assert.assertEquals(store, cache.getLatest(1, Long.MAX_VALUE, Integer.MAX_VALUE, 10));
+        Assert.assertEquals(List.of(store.get(1), created), cache.getAfterId(1, 0, 10));
+    }
+}
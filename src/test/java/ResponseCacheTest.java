@@ -0,0 +1,165 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ResponseCacheTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages twice, posting a message, and sending it again
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same listing twice, the second written from the response cache, then the listing with the
+     *  new message
+     */
+    @Test
+    public void cachedListingFollowsWrites() throws IOException, InterruptedException {
+        List<Message> expectedResult = List.of(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, readMessages(get("/accounts/1/messages", false).body()));
+        Assert.assertEquals(expectedResult, readMessages(get("/accounts/1/messages", false).body()));
+        Assert.assertTrue(get("/metrics", false).body().contains("response_cache_hits_total 1\n"));
+
+        Assert.assertEquals(200, post("/messages",
+                "{\"posted_by\":1, \"message_text\":\"test message 2\", \"time_posted_epoch\":1669947793}"));
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792),
+                new Message(2, 1, "test message 2", 1669947793)),
+                readMessages(get("/accounts/1/messages", false).body()));
+    }
+
+    /**
+     * Posting enough messages for the listing to be worth compressing, then sending an http request to GET
+     * localhost:8080/messages with and without Accept-Encoding: gzip, twice each
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the same listing every time, gzipped exactly when the client accepts it, under a weak ETag
+     */
+    @Test
+    public void cachedListingGzipped() throws IOException, InterruptedException {
+        postLongListing();
+
+        String plain = get("/messages", false).body();
+        Assert.assertEquals(40, readMessages(plain).size());
+        for (int i = 0; i < 2; i++) {
+            HttpResponse<byte[]> response = webClient.send(request("/messages", true),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+            Assert.assertTrue(response.headers().firstValue("ETag").orElse("").startsWith("W/"));
+            try (GZIPInputStream gzipped = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+                Assert.assertEquals(plain, new String(gzipped.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            HttpResponse<String> uncompressed = get("/messages", false);
+            Assert.assertFalse(uncompressed.headers().firstValue("Content-Encoding").isPresent());
+            Assert.assertEquals(plain, uncompressed.body());
+        }
+    }
+
+    /**
+     * Posting enough messages for the listing to be worth compressing, then sending an http request to GET
+     * localhost:8080/messages with Accept-Encoding headers that weigh gzip with q-values
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: gzipped only when gzip, or * if gzip is not listed, has a quality above 0
+     */
+    @Test
+    public void cachedListingFollowsAcceptEncodingQuality() throws IOException, InterruptedException {
+        postLongListing();
+        String plain = get("/messages", false).body();
+
+        for (String acceptEncoding : List.of("gzip;q=0", "gzip; q=0.0, *", "identity, *;q=0", "br")) {
+            HttpResponse<String> response = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .header("Accept-Encoding", acceptEncoding).build(), HttpResponse.BodyHandlers.ofString());
+            Assert.assertFalse(acceptEncoding, response.headers().firstValue("Content-Encoding").isPresent());
+            Assert.assertEquals(acceptEncoding, plain, response.body());
+        }
+        for (String acceptEncoding : List.of("br, gzip;q=0.5", "GZIP;Q=1", "*")) {
+            HttpResponse<byte[]> response = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .header("Accept-Encoding", acceptEncoding).build(), HttpResponse.BodyHandlers.ofByteArray());
+            Assert.assertEquals(acceptEncoding, "gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+            try (GZIPInputStream gzipped = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+                Assert.assertEquals(acceptEncoding, plain, new String(gzipped.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private void postLongListing() throws IOException, InterruptedException {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 2; i <= 40; i++) {
+            if (i > 2) batch.append(',');
+            batch.append("{\"posted_by\":1, \"message_text\":\"a message long enough to fill a listing ").append(i)
+                    .append("\", \"time_posted_epoch\":").append(1669947790 + i).append('}');
+        }
+        Assert.assertEquals(200, post("/messages/batch", batch.append(']').toString()));
+    }
+
+    private List<Message> readMessages(String body) throws IOException {
+        return objectMapper.readValue(body, new TypeReference<List<Message>>(){});
+    }
+
+    private HttpRequest request(String path, boolean gzip) {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (gzip) request.header("Accept-Encoding", "gzip");
+        return request.build();
+    }
+
+    private HttpResponse<String> get(String path, boolean gzip) throws IOException, InterruptedException {
+        return webClient.send(request(path, gzip), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private int post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.InMemoryAccountStore;
+import DAO.InMemoryMessageStore;
+import Model.Account;
+import Model.Message;
+import Service.AccountService;
+import Service.MessageService;
+
+public class SearchIndexRebuildTest {
+    /**
+     * A store that cannot be streamed until it is made available, like a database that is down at startup.
+     */
+    static class UnavailableMessageStore extends InMemoryMessageStore {
+        volatile boolean available;
+        final AtomicInteger streamCount = new AtomicInteger();
+
+        @Override
+        public int streamMessages(Integer input_account_id, int after_id, int limit, Consumer<Message> consumer) {
+            streamCount.incrementAndGet();
+            if (!available) throw new IllegalStateException("message store unavailable");
+            return super.streamMessages(input_account_id, after_id, limit, consumer);
+        }
+    }
+
+    MessageService messageService;
+
+    @Before
+    public void setUp() {
+        System.setProperty("messages.search.retryMillis", "10");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty("messages.search.retryMillis");
+        if (messageService != null) messageService.close();
+    }
+
+    /**
+     * Starting the service while its store cannot be read, creating a message while the search index build keeps
+     * failing, then making the store readable
+     *
+     * Expected Result:
+     *  The build is retried until it succeeds, and then searches find the messages created before and during the
+     *  failures
+     */
+    @Test
+    public void failedBuildRetried() throws InterruptedException {
+        InMemoryAccountStore accountStore = new InMemoryAccountStore();
+        Account account = accountStore.insertAccount(new Account("testuser1", "password"));
+        UnavailableMessageStore messageStore = new UnavailableMessageStore();
+        messageStore.insertMessage(new Message(account.getAccount_id(), "hello before", 1669947792));
+        messageService = new MessageService(new AccountService(accountStore), messageStore);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (messageStore.streamCount.get() < 2 && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        Assert.assertTrue(messageStore.streamCount.get() >= 2);
+        Assert.assertFalse(messageService.isSearchIndexReady());
+        Assert.assertNotNull(messageService.createMessage(
+                new Message(account.getAccount_id(), "hello during", 1669947793)));
+
+        messageStore.available = true;
+        while (!messageService.isSearchIndexReady() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        Assert.assertTrue(messageService.isSearchIndexReady());
+
+        List<Message> found = messageService.searchMessages("hello", null, null).getMessages();
+        Assert.assertEquals(2, found.size());
+        Assert.assertEquals("hello during", found.get(0).getMessage_text());
+        Assert.assertEquals("hello before", found.get(1).getMessage_text());
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add two more messages, restart the Javalin app, which indexes the three
+     * messages for search, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        addMessage(1, "Hello, world!", 1669947793);
+        addMessage(1, "hello again, test message", 1669947794);
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=MESSAGE+test&limit=1, then to the same search
+     * with before_id set to the cursor of the first page
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the newest message holding both words, then the oldest
+     *  X-Next-Cursor: 3 on the first page, absent on the second
+     */
+    @Test
+    public void searchMessagesNewestFirst() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/search?q=MESSAGE+test&limit=1");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("3", response.headers().firstValue("X-Next-Cursor").orElse(null));
+        Assert.assertEquals(List.of(new Message(3, 1, "hello again, test message", 1669947794)), messages(response));
+
+        response = get("/messages/search?q=MESSAGE+test&limit=1&before_id=3");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.headers().firstValue("X-Next-Cursor").isPresent());
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), messages(response));
+    }
+
+    /**
+     * Posting a message, updating another and deleting a third, searching for hello after each
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: every search sees the messages as they are after the change before it
+     */
+    @Test
+    public void searchFollowsChanges() throws IOException, InterruptedException {
+        Assert.assertEquals(List.of(3, 2), messageIds(get("/messages/search?q=hello")));
+
+        Assert.assertEquals(200, send("POST", "/messages",
+                "{\"posted_by\":1, \"message_text\":\"hello there\", \"time_posted_epoch\":1669947795}").statusCode());
+        Assert.assertEquals(List.of(4, 3, 2), messageIds(get("/messages/search?q=hello")));
+
+        Assert.assertEquals(200, send("PATCH", "/messages/2", "{\"message_text\":\"goodbye, world\"}").statusCode());
+        Assert.assertEquals(List.of(4, 3), messageIds(get("/messages/search?q=hello")));
+        Assert.assertEquals(List.of(2), messageIds(get("/messages/search?q=goodbye")));
+
+        Assert.assertEquals(200, send("DELETE", "/messages/3", null).statusCode());
+        Assert.assertEquals(List.of(4), messageIds(get("/messages/search?q=hello")));
+        Assert.assertEquals(List.of(), messageIds(get("/messages/search?q=again")));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=%21%21
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void searchMessagesWithoutTerms() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/search?q=%21%21");
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertTrue(response.body().isEmpty());
+    }
+
+    private List<Message> messages(HttpResponse<String> response) throws IOException {
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private List<Integer> messageIds(HttpResponse<String> response) throws IOException {
+        Assert.assertEquals(200, response.statusCode());
+        return messages(response).stream().map(Message::getMessage_id).collect(Collectors.toList());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return send("GET", path, null);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void addMessage(int posted_by, String message_text, long time_posted_epoch) {
+        try (Connection conn = ConnectionUtil.getConnection();
+                PreparedStatement ps = conn.prepareStatement(
+                        "insert into message (posted_by, message_text, time_posted_epoch) values (?, ?, ?)")) {
+            ps.setInt(1, posted_by);
+            ps.setString(2, message_text);
+            ps.setLong(3, time_posted_epoch);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+package Service;
+
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import DAO.InMemoryMessageStore;
+import Model.Message;
+import Util.UncheckedSQLException;
+
+public class GroupCommitWriterTest {
+    /**
+     * A store that records the size of every group it is given, and can hold the writer inside a write until
+     * released, so that inserts pile up behind it.
+     */
+    static class BlockingMessageStore extends InMemoryMessageStore {
+        final List<Integer> groupSizes = new CopyOnWriteArrayList<>();
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean failing;
+
+        @Override
+        public List<Message> insertMessages(List<Message> messages) {
+            groupSizes.add(messages.size());
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing) throw new IllegalStateException("message store unavailable");
+            return super.insertMessages(messages);
+        }
+    }
+
+    BlockingMessageStore store = new BlockingMessageStore();
+    GroupCommitWriter writer;
+
+    @After
+    public void tearDown() {
+        store.release.countDown();
+        if (writer != null) writer.close();
+    }
+
+    static void assertGivenUp(CompletableFuture<Message> future) {
+        try {
+            future.join();
+            Assert.fail("expected the insert to be given up on");
+        } catch (CompletionException e) {
+            Assert.assertTrue(e.getCause() instanceof UncheckedSQLException);
+            Assert.assertTrue(e.getCause().getCause() instanceof SQLTransientException);
+        }
+    }
+
+    /**
+     * Submitting several messages while the writer is busy with an earlier one
+     *
+     * Expected Result:
+     *  The waiting messages are written together in the next group, and each caller gets its own message back with a
+     *  message_id
+     */
+    @Test
+    public void waitingInsertsWrittenTogether() throws InterruptedException {
+        writer = new GroupCommitWriter(store, 256, 0, 16, 1000);
+        CompletableFuture<Message> first = writer.submit(new Message(1, "message 0", 1669947792));
+        Assert.assertTrue(store.writing.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<Message>> waiting = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) waiting.add(writer.submit(new Message(1, "message " + i, 1669947792 + i)));
+        store.release.countDown();
+
+        Assert.assertEquals("message 0", first.join().getMessage_text());
+        for (int i = 0; i < waiting.size(); i++) {
+            Message inserted = waiting.get(i).join();
+            Assert.assertEquals("message " + (i + 1), inserted.getMessage_text());
+            Assert.assertEquals(i + 2, inserted.getMessage_id());
+        }
+        Assert.assertEquals(List.of(1, 5), store.groupSizes);
+    }
+
+    /**
+     * Submitting a message while the queue stays full for longer than submitTimeoutMillis
+     *
+     * Expected Result:
+     *  The insert is given up on with a transient error, and the messages already queued are still written
+     */
+    @Test
+    public void queueFullGivenUp() throws InterruptedException {
+        writer = new GroupCommitWriter(store, 256, 0, 1, 50);
+        CompletableFuture<Message> writing = writer.submit(new Message(1, "message 1", 1669947792));
+        Assert.assertTrue(store.writing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Message> queued = writer.submit(new Message(1, "message 2", 1669947793));
+
+        assertGivenUp(writer.submit(new Message(1, "message 3", 1669947794)));
+
+        store.release.countDown();
+        Assert.assertEquals("message 1", writing.join().getMessage_text());
+        Assert.assertEquals("message 2", queued.join().getMessage_text());
+    }
+
+    /**
+     * A group whose write throws
+     *
+     * Expected Result:
+     *  Every insert of the group is given up on with a transient error rather than reported as not inserted
+     */
+    @Test
+    public void failedWriteGivenUp() throws InterruptedException {
+        store.failing = true;
+        store.release.countDown();
+        writer = new GroupCommitWriter(store, 256, 0, 16, 1000);
+
+        assertGivenUp(writer.submit(new Message(1, "message 1", 1669947792)));
+    }
+
+    /**
+     * Closing the writer while several threads keep submitting
+     *
+     * Expected Result:
+     *  Every submitted insert completes, either written or given up on, and exactly the written ones are in the store
+     */
+    @Test
+    public void closeWhileSubmitting() throws InterruptedException {
+        store.release.countDown();
+        writer = new GroupCommitWriter(store, 8, 0, 16, 1000);
+        List<CompletableFuture<Message>> futures = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(4);
+        List<Thread> submitters = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread submitter = new Thread(() -> {
+                started.countDown();
+                for (int i = 0; i < 500; i++) futures.add(writer.submit(new Message(1, "message", 1669947792)));
+            });
+            submitter.start();
+            submitters.add(submitter);
+        }
+        started.await();
+        Thread.sleep(5);
+        writer.close();
+        for (Thread submitter : submitters) submitter.join();
+
+        int written = 0;
+        for (CompletableFuture<Message> future : futures) {
+            try {
+                if (future.get(5, TimeUnit.SECONDS) != null) written++;
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof UncheckedSQLException);
+            } catch (TimeoutException e) {
+                Assert.fail("an insert submitted around close() was never completed");
+            }
+        }
+        Assert.assertEquals(2000, futures.size());
+        Assert.assertEquals(written, store.getMessagesAfterId(0, Integer.MAX_VALUE).size());
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.StorageEngine;
+import Model.Account;
+import Model.Message;
+import io.javalin.Javalin;
+
+public class SnapshotStorageTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+    Path snapshotDirectory;
+
+    /**
+     * Before every test, point the snapshots and write-ahead log at an empty directory, start the Javalin app on the
+     * snapshot storage engine, and create a new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        snapshotDirectory = Files.createTempDirectory("snapshots");
+        System.setProperty("storage.snapshot.dir", snapshotDirectory.toString());
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        app.stop();
+        System.clearProperty("storage.snapshot.dir");
+        try (Stream<Path> files = Files.walk(snapshotDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void start() throws InterruptedException {
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI(StorageEngine.SNAPSHOT);
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    /**
+     * Registering an account, posting three messages, updating one and deleting another, then restarting the app on
+     * the same directory, posting another message and restarting again
+     *
+     * Expected Response:
+     *  Status Code: 200 throughout
+     *  Response Body: after the first restart the account can log in, its listing holds the updated message and the
+     *  untouched one, and the next message posted gets the next id; after the second that message is still there
+     */
+    @Test
+    public void accountsAndMessagesSurviveRestart() throws IOException, InterruptedException {
+        HttpResponse<String> response = send("POST", "/register",
+                "{\"username\":\"snapshotuser\", \"password\":\"password\"}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Account(1, "snapshotuser", "password"),
+                objectMapper.readValue(response.body(), Account.class));
+        for (int i = 1; i <= 3; i++) {
+            response = send("POST", "/messages", "{\"posted_by\":1, \"message_text\":\"message " + i + "\", "
+                    + "\"time_posted_epoch\":" + (1000 + i) + "}");
+            Assert.assertEquals(200, response.statusCode());
+        }
+        Assert.assertEquals(200, send("PATCH", "/messages/1", "{\"message_text\":\"updated\"}").statusCode());
+        Assert.assertEquals(200, send("DELETE", "/messages/2", null).statusCode());
+
+        app.stop();
+        start();
+
+        response = send("POST", "/login", "{\"username\":\"snapshotuser\", \"password\":\"password\"}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Account(1, "snapshotuser", "password"),
+                objectMapper.readValue(response.body(), Account.class));
+
+        response = send("GET", "/accounts/1/messages", null);
+        Assert.assertEquals(200, response.statusCode());
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "updated", 1001), new Message(3, 1, "message 3", 1003)),
+                messages);
+
+        response = send("POST", "/messages",
+                "{\"posted_by\":1, \"message_text\":\"message 4\", \"time_posted_epoch\":1004}");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(4, 1, "message 4", 1004),
+                objectMapper.readValue(response.body(), Message.class));
+
+        app.stop();
+        start();
+
+        response = send("GET", "/messages/4", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(new Message(4, 1, "message 4", 1004),
+                objectMapper.readValue(response.body(), Message.class));
+        response = send("GET", "/messages/2", null);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
+
+    private HttpResponse<String> send(String method, String path, String body)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,120 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+import Util.StatementCache;
+
+public class StatementCacheTest {
+    ConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:statementCacheTest");
+        pool = new ConnectionPool(dataSource, 1, 0, 1000, 0, false, 2);
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+    }
+
+    StatementCache.Counters counters(String sql) {
+        return pool.getStatementCacheCounters().get(sql);
+    }
+
+    static int execute(PreparedStatement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    /**
+     * Preparing the same SQL again after closing the first statement, then using and closing the first one again
+     *
+     * Expected Result:
+     *  The second prepare re-uses the cached statement through a new handle. The old handle stays closed and closing
+     *  it again does not take the statement away from the second caller
+     */
+    @Test
+    public void closedHandleCannotReachReusedStatement() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            PreparedStatement first = connection.prepareStatement("SELECT 1");
+            Assert.assertEquals(1, execute(first));
+            first.close();
+
+            PreparedStatement second = connection.prepareStatement("SELECT 1");
+            Assert.assertNotSame(first, second);
+            Assert.assertEquals(1, counters("SELECT 1").getHits());
+            Assert.assertEquals(1, counters("SELECT 1").getMisses());
+
+            Assert.assertTrue(first.isClosed());
+            try {
+                first.executeQuery();
+                Assert.fail("expected a closed statement to refuse use");
+            } catch (SQLException e) {
+                Assert.assertEquals("Statement is closed", e.getMessage());
+            }
+            first.close();
+            Assert.assertFalse(second.isClosed());
+            Assert.assertEquals(1, execute(second));
+            Assert.assertSame(connection, second.getConnection());
+        }
+    }
+
+    /**
+     * Returning the connection with a statement still open
+     *
+     * Expected Result:
+     *  The statement is checked in and closed for its caller, and the next borrower re-uses it
+     */
+    @Test
+    public void releaseChecksInOpenStatements() throws SQLException {
+        PreparedStatement leaked;
+        try (Connection connection = pool.getConnection()) {
+            leaked = connection.prepareStatement("SELECT 2");
+            Assert.assertEquals(2, execute(leaked));
+        }
+        Assert.assertTrue(leaked.isClosed());
+
+        try (Connection connection = pool.getConnection();
+                PreparedStatement statement = connection.prepareStatement("SELECT 2")) {
+            Assert.assertEquals(2, execute(statement));
+        }
+        Assert.assertEquals(1, counters("SELECT 2").getHits());
+    }
+
+    /**
+     * Preparing and closing more distinct statements than the cache holds
+     *
+     * Expected Result:
+     *  The least recently used statement is evicted, and preparing its SQL again is a miss
+     */
+    @Test
+    public void leastRecentlyUsedEvicted() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            for (String sql : new String[] { "SELECT 3", "SELECT 4", "SELECT 3", "SELECT 5" }) {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    execute(statement);
+                }
+            }
+            Assert.assertEquals(1, counters("SELECT 4").getEvictions());
+            Assert.assertEquals(0, counters("SELECT 3").getEvictions());
+
+            try (PreparedStatement statement = connection.prepareStatement("SELECT 4")) {
+                Assert.assertEquals(4, execute(statement));
+            }
+            Assert.assertEquals(2, counters("SELECT 4").getMisses());
+            Assert.assertEquals(1, counters("SELECT 3").getHits());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.h2.tools.RunScript;
+
+/**
+ * Compares the latency of the "latest N messages of account X before time T" query with and without
+ * message_posted_by_time_idx, on a seeded in-memory copy of the schema. This is not a test case and is not run by
+ * mvn test. Run it with:
+ *
+ *   mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=TimelineIndexBenchmark -Dexec.args="1000000 10000 500"
+ *
+ * The arguments are the number of messages, the number of accounts they are spread over, and the number of queries
+ * timed per variant.
+ */
+public class TimelineIndexBenchmark {
+    private static final String INDEXED_SQL = "SELECT * FROM message WHERE posted_by = ? AND time_posted_epoch <= ? "
+            + "AND (time_posted_epoch < ? OR message_id > ?) "
+            + "ORDER BY posted_by, time_posted_epoch DESC, message_id LIMIT ?";
+    private static final String SCAN_SQL = "SELECT * FROM message USE INDEX () WHERE posted_by = ? "
+            + "AND time_posted_epoch <= ? AND (time_posted_epoch < ? OR message_id > ?) "
+            + "ORDER BY posted_by, time_posted_epoch DESC, message_id LIMIT ?";
+    private static final int PAGE_SIZE = 20;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int queries = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        Connection connection = DriverManager.getConnection("jdbc:h2:mem:timeline_benchmark", "sa", "sa");
+        seed(connection, rows, accounts);
+
+        // The scan variant is far slower, so it is given fewer queries
+        report("table scan", measure(connection, SCAN_SQL, Math.max(10, queries / 10), accounts, rows));
+        report("composite index", measure(connection, INDEXED_SQL, queries, accounts, rows));
+        connection.close();
+    }
+
+    private static void seed(Connection connection, int rows, int accounts) throws Exception {
+        long start = System.nanoTime();
+        RunScript.execute(connection, new FileReader("src/main/resources/SocialMedia.sql"));
+        Statement statement = connection.createStatement();
+        statement.execute("DELETE FROM message");
+        statement.execute("INSERT INTO account(username, password) SELECT 'user' || X, 'password' "
+                + "FROM SYSTEM_RANGE(2, " + accounts + ")");
+        // Spread messages over accounts, with post times that are not in message_id order
+        statement.execute("INSERT INTO message(posted_by, message_text, time_posted_epoch) "
+                + "SELECT MOD(X, " + accounts + ") + 1, 'benchmark message ' || X, "
+                + "1669947792 + MOD(X * 7919, " + rows + ") FROM SYSTEM_RANGE(1, " + rows + ")");
+        statement.close();
+        System.out.printf("seeded %,d messages over %,d accounts in %d ms%n", rows, accounts,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static long[] measure(Connection connection, String sql, int queries, int accounts, int rows)
+            throws Exception {
+        PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        Random random = new Random(42);
+        // Warm up before timing
+        for (int i = 0; i < Math.min(queries, 20); i++) run(preparedStatement, random, accounts, rows);
+
+        long[] nanos = new long[queries];
+        for (int i = 0; i < queries; i++) {
+            long start = System.nanoTime();
+            run(preparedStatement, random, accounts, rows);
+            nanos[i] = System.nanoTime() - start;
+        }
+        preparedStatement.close();
+        return nanos;
+    }
+
+    private static int run(PreparedStatement preparedStatement, Random random, int accounts, int rows)
+            throws Exception {
+        long before = 1669947792L + random.nextInt(rows);
+        preparedStatement.setInt(1, random.nextInt(accounts) + 1);
+        preparedStatement.setLong(2, before);
+        preparedStatement.setLong(3, before);
+        preparedStatement.setInt(4, Integer.MAX_VALUE);
+        preparedStatement.setInt(5, PAGE_SIZE);
+        int count = 0;
+        ResultSet resultSet = preparedStatement.executeQuery();
+        while (resultSet.next()) count++;
+        resultSet.close();
+        return count;
+    }
+
+    private static void report(String variant, long[] nanos) {
+        Arrays.sort(nanos);
+        double mean = Arrays.stream(nanos).average().orElse(0) / 1_000_000.0;
+        System.out.printf("%-16s queries=%d mean=%.3f ms p50=%.3f ms p99=%.3f ms%n", variant, nanos.length, mean,
+                nanos[nanos.length / 2] / 1_000_000.0, nanos[(int) (nanos.length * 0.99)] / 1_000_000.0);
+    }
+}